@@ -0,0 +1,41 @@
+package miniregex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State; // not miniregex.State
+
+/** (a|aa)*b against a run of n 'a's and no 'b'. A backtracking
+ *  matcher tries every way to split the run, a number that grows
+ *  like Fibonacci's; the DFA reads each character once.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BacktrackingBenchmark
+{
+  @Param( { "12", "20", "28" } )
+  public int n;
+
+  private String  _input;
+  private DFA     _dfa;
+  private Pattern _java;
+
+  @Setup
+  public void setup()
+  {
+    _input = "a".repeat( n );
+    _dfa   = Regex.parse( "(a|aa)*b" ).dfa();
+    _java  = Pattern.compile( "(a|aa)*b" );
+  }
+
+  @Benchmark
+  public boolean dfa() { return _dfa.simulate( _input ); }
+
+  @Benchmark
+  public boolean javaUtilRegex() { return _java.matcher( _input ).matches(); }
+}
@@ -0,0 +1,47 @@
+package miniregex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State; // not miniregex.State
+
+/** How long it takes to turn a pattern into something that can
+ *  match: parsing it into an NFA, and the subset construction and
+ *  minimization of NFA.dfa(), or all the way from the pattern with
+ *  Glushkov.dfa(). "hostile" is (a|b)*a(a|b){n}, whose DFA has
+ *  2^(n+1) states.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CompileBenchmark
+{
+  @Param( { "(s|t)*stt", "(s|t|x)*error(s|t|x)*", "hostile-8", "hostile-12", "words-200" } )
+  public String pattern;
+
+  private String _regex;
+  private NFA    _nfa;
+
+  @Setup
+  public void setup()
+  {
+    _regex = Workloads.pattern( pattern );
+    _nfa   = Regex.parse( _regex );
+  }
+
+  @Benchmark
+  public NFA parse() { return Regex.parse( _regex ); }
+
+  @Benchmark
+  public DFA dfa() { return _nfa.dfa(); }
+
+  @Benchmark
+  public DFA glushkov() { return Glushkov.dfa( _regex ); }
+
+  @Benchmark
+  public Pattern javaUtilRegex() { return Pattern.compile( _regex ); }
+}
@@ -0,0 +1,85 @@
+package miniregex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State; // not miniregex.State
+
+/** Matching throughput over inputs of growing size, each of the
+ *  engine's matchers against java.util.regex on the same pattern.
+ *  Run with -prof gc to see what each one allocates per match.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MatchBenchmark
+{
+  @Param( { "(s|t)*stt", "(s|t|x)*error(s|t|x)*", "hostile-12" } )
+  public String pattern;
+
+  @Param( { "1024", "65536", "1048576" } )
+  public int size;
+
+  private String      _input;
+  private byte[]      _bytes;
+  private DFA         _dfa;
+  private Utf8DFA     _utf8;
+  private BytecodeDFA _bytecode;
+  private LazyDFA     _lazy;
+  private PikeVM      _pike;
+  private Regex       _regex;
+  private Pattern     _java;
+
+  @Setup
+  public void setup()
+  {
+    NFA nfa = Regex.parse( Workloads.pattern( pattern ) );
+
+    _input    = Workloads.input( pattern, size );
+    _bytes    = _input.getBytes( StandardCharsets.UTF_8 );
+    _dfa      = nfa.dfa();
+    _utf8     = Utf8DFA.of( nfa );
+    _bytecode = BytecodeDFA.compile( _dfa );
+    _lazy     = nfa.lazyDfa( 1 << 20 );
+    _pike     = nfa.pikeVM();
+    _regex    = Regex.compile( Workloads.pattern( pattern ) );
+    _java     = Pattern.compile( Workloads.javaPattern( pattern ) );
+
+    if ( !_dfa.simulate( _input ) || !_java.matcher( _input ).matches() )
+      throw new IllegalStateException( "the input of " + pattern + " doesn't match" );
+  }
+
+  @Benchmark
+  public boolean dfa() { return _dfa.simulate( _input ); }
+
+  /** The table again for DFAs too large to compile, as in Regex.
+   */
+  @Benchmark
+  public boolean bytecode() { return _bytecode != null ? _bytecode.simulate( _input ) : _dfa.simulate( _input ); }
+
+  /** The same input as UTF-8 bytes, decoded first or matched as
+   *  bytes.
+   */
+  @Benchmark
+  public boolean decodeThenDfa() { return _dfa.simulate( new String( _bytes, StandardCharsets.UTF_8 ) ); }
+
+  @Benchmark
+  public boolean utf8Dfa() { return _utf8.simulate( _bytes ); }
+
+  @Benchmark
+  public boolean lazyDfa() { return _lazy.simulate( _input ); }
+
+  @Benchmark
+  public boolean pikeVM() { return _pike.simulate( _input ); }
+
+  @Benchmark
+  public boolean regexWithPrefilter() { return _regex.matches( _input ); }
+
+  @Benchmark
+  public boolean javaUtilRegex() { return _java.matcher( _input ).matches(); }
+}
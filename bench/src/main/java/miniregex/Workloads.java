@@ -0,0 +1,75 @@
+package miniregex;
+
+import java.util.*;
+
+/** The patterns the benchmarks run, and inputs of a given size
+ *  that match them all the way to the end, so no matcher gets to
+ *  stop early.
+ */
+final class Workloads
+{
+  private Workloads() {}
+
+  static String pattern( String name )
+  {
+    if ( name.startsWith( "hostile-" ) )
+      return "(a|b)*a" + "(a|b)".repeat( Integer.parseInt( name.substring( 8 ) ) );
+
+    if ( name.startsWith( "words-" ) )
+    {
+      StringJoiner words = new StringJoiner( "|" );
+      for ( int i = 0; i < Integer.parseInt( name.substring( 6 ) ); i++ ) words.add( "word" + i );
+      return "(" + words + ")*";
+    }
+
+    return name;
+  }
+
+  /** The same language for java.util.regex, with character classes
+   *  where a group under * would make it recurse once per
+   *  character and overflow the stack on long inputs.
+   */
+  static String javaPattern( String name )
+  {
+    switch ( name )
+    {
+      case "(s|t)*stt":             return "[st]*stt";
+      case "(s|t|x)*error(s|t|x)*": return "[stx]*error[stx]*";
+    }
+
+    if ( name.startsWith( "hostile-" ) )
+      return "[ab]*a[ab]{" + Integer.parseInt( name.substring( 8 ) ) + "}";
+
+    return pattern( name );
+  }
+
+  static String input( String name, int size )
+  {
+    Random        random = new Random( size );
+    StringBuilder sb     = new StringBuilder( size );
+
+    switch ( name )
+    {
+      case "(s|t)*stt":
+        while ( sb.length() < size - 3 ) sb.append( random.nextBoolean() ? 's' : 't' );
+        return sb.append( "stt" ).toString();
+
+      case "(s|t|x)*error(s|t|x)*":
+        while ( sb.length() < size / 2 ) sb.append( "stx".charAt( random.nextInt( 3 ) ) );
+        sb.append( "error" );
+        while ( sb.length() < size ) sb.append( "stx".charAt( random.nextInt( 3 ) ) );
+        return sb.toString();
+    }
+
+    if ( name.startsWith( "hostile-" ) )
+    {
+      int n = Integer.parseInt( name.substring( 8 ) );
+      while ( sb.length() < size - n - 1 ) sb.append( random.nextBoolean() ? 'a' : 'b' );
+      sb.append( 'a' );
+      while ( sb.length() < size ) sb.append( random.nextBoolean() ? 'a' : 'b' );
+      return sb.toString();
+    }
+
+    throw new IllegalArgumentException( "no input for " + name );
+  }
+}
@@ -0,0 +1,421 @@
+package miniregex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/** A DFA compiled to JVM bytecode. Instead of looking its next
+ *  state up in the transition table, each state is a piece of code
+ *  that reads a character and switches on it to the next state:
+ *
+ *    S_s:  switch ( in.charAt( i++ ) )
+ *          {
+ *            case 'a': case 'b': s = t; continue;
+ *            ...
+ *            default: return DEAD;
+ *          }
+ *
+ *  the character classes and the transitions becoming constants
+ *  in the code. The code is a method of a hidden class, which goes
+ *  away with the BytecodeDFA.
+ *
+ *  The JIT leaves methods of more than 8000 bytes of bytecode to
+ *  the interpreter, so only DFAs whose code fits in that compile;
+ *  compile() returns null for the others, which are better off
+ *  with their table. Even then, the table wins on inputs that
+ *  change state at every character, where the switches' jumps are
+ *  hard to predict; see Regex.BYTECODE.
+ */
+final class BytecodeDFA
+{
+  /** What the hidden class implements.
+   */
+  interface Walker
+  {
+    int walk( int s, CharSequence in, int from, int to );
+  }
+
+  static final int MAX_CODE_BYTES = 8000;
+
+  private final DFA    dfa;
+  private final Walker walker;
+
+  private BytecodeDFA( DFA dfa, Walker walker )
+  {
+    this.dfa    = dfa;
+    this.walker = walker;
+  }
+
+  /** Compiles the DFA, or returns null when its code would be too
+   *  large for the JIT.
+   */
+  public static BytecodeDFA compile( DFA dfa )
+  {
+    AdHocAssembler code = _walkCode( dfa );
+    if ( code == null ) return null;
+
+    try
+    {
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass( _classFile( code ), true );
+      Walker walker = ( Walker )lookup.findConstructor( lookup.lookupClass(), MethodType.methodType( void.class ) ).invoke();
+
+      return new BytecodeDFA( dfa, walker );
+    }
+    catch ( Throwable ex )
+    {
+      throw new IllegalStateException( "the generated DFA class was rejected", ex );
+    }
+  }
+
+  public DFA dfa() { return dfa; }
+
+  /** Same as DFA.walk.
+   */
+  public int walk( int s, CharSequence in, int from, int to ) { return walker.walk( s, in, from, to ); }
+
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int to )
+  {
+    int s = walker.walk( dfa.start(), in, from, to );
+    return s != DFA.DEAD && dfa.isFinal( s );
+  }
+
+  // The class file. Its constant pool is fixed, the code of walk()
+  // is the only part that depends on the DFA.
+
+  private static final int CP_THIS          = 2;
+  private static final int CP_OBJECT        = 4;
+  private static final int CP_WALKER        = 6;
+  private static final int CP_INIT          = 7;
+  private static final int CP_VOID          = 8;
+  private static final int CP_OBJECT_INIT   = 10;
+  private static final int CP_WALK          = 11;
+  private static final int CP_WALK_TYPE     = 12;
+  private static final int CP_CODE          = 13;
+  private static final int CP_CHAR_AT       = 19;
+  private static final int CP_STACK_MAP     = 20;
+  private static final int CP_COUNT         = 21;
+
+  private static final int ILOAD_1         = 0x1b;
+  private static final int ILOAD_3         = 0x1d;
+  private static final int ISTORE_1        = 0x3c;
+  private static final int ILOAD           = 0x15;
+  private static final int ALOAD_0         = 0x2a;
+  private static final int ALOAD_2         = 0x2c;
+  private static final int ICONST_M1       = 0x02;
+  private static final int SIPUSH          = 0x11;
+  private static final int IINC            = 0x84;
+  private static final int IF_ICMPGE       = 0xa2;
+  private static final int GOTO            = 0xa7;
+  private static final int TABLESWITCH     = 0xaa;
+  private static final int LOOKUPSWITCH    = 0xab;
+  private static final int IRETURN         = 0xac;
+  private static final int RETURN          = 0xb1;
+  private static final int INVOKESPECIAL   = 0xb7;
+  private static final int INVOKEINTERFACE = 0xb9;
+
+  /** A growable byte array with big-endian writes, and labels
+   *  whose uses are patched once they are placed.
+   */
+  private static final class AdHocAssembler
+  {
+    byte[] bytes = new byte[256];
+    int    size  = 0;
+
+    int[]       labels  = new int[16];
+    int         nlabels = 0;
+    List<int[]> patches = new ArrayList<>(); // { at, branch pc, label, width }
+
+    AdHocAssembler u1( int v )
+    {
+      if ( size == bytes.length ) bytes = Arrays.copyOf( bytes, 2 * size );
+      bytes[size++] = ( byte )v;
+      return this;
+    }
+
+    AdHocAssembler u2( int v ) { return u1( v >>> 8 ).u1( v ); }
+    AdHocAssembler u4( int v ) { return u2( v >>> 16 ).u2( v ); }
+
+    AdHocAssembler utf8( String s )
+    {
+      u1( 1 ).u2( s.length() );
+      for ( int i = 0; i < s.length(); i++ ) u1( s.charAt( i ) ); // ASCII only
+      return this;
+    }
+
+    AdHocAssembler bytes( byte[] b, int len )
+    {
+      for ( int i = 0; i < len; i++ ) u1( b[i] );
+      return this;
+    }
+
+    void place( int label )
+    {
+      if ( label >= labels.length ) labels = Arrays.copyOf( labels, 2 * label + 2 );
+      labels[label] = size;
+      nlabels = Math.max( nlabels, label + 1 );
+    }
+
+    /** Writes the offset from the branch at pc to label.
+     */
+    void offset( int pc, int label, int width )
+    {
+      patches.add( new int[]{ size, pc, label, width } );
+      if ( width == 2 ) u2( 0 ); else u4( 0 );
+    }
+
+    void align4() { while ( size % 4 != 0 ) u1( 0 ); }
+
+    void patch()
+    {
+      for ( int[] p : patches )
+      {
+        int off = labels[ p[2] ] - p[1];
+        if ( p[3] == 2 )
+        {
+          bytes[ p[0] ]     = ( byte )( off >>> 8 );
+          bytes[ p[0] + 1 ] = ( byte )off;
+        }
+        else
+        {
+          for ( int k = 0; k < 4; k++ ) bytes[ p[0] + k ] = ( byte )( off >>> ( 24 - 8 * k ) );
+        }
+      }
+    }
+  }
+
+  /** The bytecode of walk( int s, CharSequence in, int i, int to ),
+   *  null when it would be larger than MAX_CODE_BYTES:
+   *
+   *    LOOP: if ( i >= to ) return s;
+   *          switch ( s ) { case 0: goto S_0; ... default: return DEAD; }
+   *    S_s:  switch ( in.charAt( i++ ) ) { case 'a': goto T_t; ... default: return DEAD; }
+   *    T_t:  s = t; goto LOOP;
+   *
+   *  Jumping from state to state directly would make a loop with
+   *  as many entries as states, which the JIT handles poorly; this
+   *  way LOOP is its only header, the one backward jump that gets
+   *  the method compiled while it runs. The locals keep their types all along and the
+   *  stack is empty at every label, so the labels are all at the
+   *  method's entry frame.
+   */
+  private static AdHocAssembler _walkCode( DFA dfa )
+  {
+    final int n = dfa.count();
+    if ( n > Short.MAX_VALUE ) return null;
+
+    // Labels: LOOP = 0, S_s = 1 + s, T_t = 1 + n + t, DEAD = 1 + 2n
+    // and RET = 2 + 2n
+
+    final int loop = 0;
+    final int dead = 1 + 2 * n;
+    final int ret  = 2 + 2 * n;
+
+    char[] classmap = dfa._classmap();
+    int[]  keys     = new int[ classmap.length ];
+    int[]  targets  = new int[ classmap.length ];
+
+    AdHocAssembler a = new AdHocAssembler();
+
+    a.place( loop );
+    int pc = a.size;
+    a.u1( ILOAD_3 ).u1( ILOAD ).u1( 4 ).u1( IF_ICMPGE );
+    a.offset( pc + 3, ret, 2 );
+
+    a.u1( ILOAD_1 );
+    pc = a.size;
+    a.u1( TABLESWITCH ).align4();
+    a.offset( pc, dead, 4 );
+    a.u4( 0 ).u4( n - 1 );
+    for ( int s = 0; s < n; s++ ) a.offset( pc, 1 + s, 4 );
+
+    for ( int s = 0; s < n; s++ )
+    {
+      a.place( 1 + s );
+      a.u1( ALOAD_2 ).u1( ILOAD_3 ).u1( INVOKEINTERFACE ).u2( CP_CHAR_AT ).u1( 2 ).u1( 0 );
+      a.u1( IINC ).u1( 3 ).u1( 1 );
+
+      int nkeys = 0;
+      for ( int c = 0; c < classmap.length; c++ )
+      {
+        if ( classmap[c] == 0 ) continue;
+
+        int t = dfa.next( s, ( char )c );
+        if ( t == DFA.DEAD ) continue;
+
+        keys[nkeys]    = c;
+        targets[nkeys] = 1 + n + t;
+        nkeys++;
+      }
+
+      int range = nkeys == 0 ? 0 : keys[ nkeys - 1 ] - keys[0] + 1;
+
+      pc = a.size;
+      if ( nkeys > 0 && range <= 2 * nkeys + 8 )
+      {
+        a.u1( TABLESWITCH ).align4();
+        a.offset( pc, dead, 4 );
+        a.u4( keys[0] ).u4( keys[ nkeys - 1 ] );
+
+        for ( int c = keys[0], k = 0; c <= keys[ nkeys - 1 ]; c++ )
+        {
+          if ( keys[k] == c ) a.offset( pc, targets[k++], 4 );
+          else                a.offset( pc, dead, 4 );
+        }
+      }
+      else
+      {
+        a.u1( LOOKUPSWITCH ).align4();
+        a.offset( pc, dead, 4 );
+        a.u4( nkeys );
+
+        for ( int k = 0; k < nkeys; k++ )
+        {
+          a.u4( keys[k] );
+          a.offset( pc, targets[k], 4 );
+        }
+      }
+
+      if ( a.size > MAX_CODE_BYTES ) return null;
+    }
+
+    for ( int t = 0; t < n; t++ )
+    {
+      a.place( 1 + n + t );
+      a.u1( SIPUSH ).u2( t ).u1( ISTORE_1 );
+      pc = a.size;
+      a.u1( GOTO );
+      a.offset( pc, loop, 2 );
+    }
+
+    a.place( dead );
+    a.u1( ICONST_M1 ).u1( IRETURN );
+
+    a.place( ret );
+    a.u1( ILOAD_1 ).u1( IRETURN );
+
+    if ( a.size > MAX_CODE_BYTES ) return null;
+
+    a.patch();
+    return a;
+  }
+
+  private static byte[] _classFile( AdHocAssembler code )
+  {
+    AdHocAssembler cf = new AdHocAssembler();
+
+    cf.u4( 0xcafebabe ).u2( 0 ).u2( 61 );
+
+    cf.u2( CP_COUNT );
+    cf.utf8( "miniregex/BytecodeDFA$Generated" );                 //  1
+    cf.u1( 7 ).u2( 1 );                                           //  2 this class
+    cf.utf8( "java/lang/Object" );                                //  3
+    cf.u1( 7 ).u2( 3 );                                           //  4
+    cf.utf8( "miniregex/BytecodeDFA$Walker" );                    //  5
+    cf.u1( 7 ).u2( 5 );                                           //  6
+    cf.utf8( "<init>" );                                          //  7
+    cf.utf8( "()V" );                                             //  8
+    cf.u1( 12 ).u2( CP_INIT ).u2( CP_VOID );                      //  9
+    cf.u1( 10 ).u2( CP_OBJECT ).u2( 9 );                          // 10 Object.<init>
+    cf.utf8( "walk" );                                            // 11
+    cf.utf8( "(ILjava/lang/CharSequence;II)I" );                  // 12
+    cf.utf8( "Code" );                                            // 13
+    cf.utf8( "java/lang/CharSequence" );                          // 14
+    cf.u1( 7 ).u2( 14 );                                          // 15
+    cf.utf8( "charAt" );                                          // 16
+    cf.utf8( "(I)C" );                                            // 17
+    cf.u1( 12 ).u2( 16 ).u2( 17 );                                // 18
+    cf.u1( 11 ).u2( 15 ).u2( 18 );                                // 19 CharSequence.charAt
+    cf.utf8( "StackMapTable" );                                   // 20
+
+    cf.u2( 0x0030 ).u2( CP_THIS ).u2( CP_OBJECT );                // final super
+    cf.u2( 1 ).u2( CP_WALKER );
+    cf.u2( 0 );                                                   // no fields
+    cf.u2( 2 );
+
+    // public <init>() { super(); }
+
+    cf.u2( 0x0001 ).u2( CP_INIT ).u2( CP_VOID ).u2( 1 );
+    cf.u2( CP_CODE ).u4( 12 + 5 ).u2( 1 ).u2( 1 ).u4( 5 );
+    cf.u1( ALOAD_0 ).u1( INVOKESPECIAL ).u2( CP_OBJECT_INIT ).u1( RETURN );
+    cf.u2( 0 ).u2( 0 );
+
+    // public int walk( int s, CharSequence in, int i, int to )
+    //
+    // Every label follows a jump or a return, and needs a frame
+    // whether or not anything jumps to it
+
+    int[] frames = Arrays.copyOf( code.labels, code.nlabels );
+    Arrays.sort( frames );
+
+    AdHocAssembler stack_map = new AdHocAssembler();
+    stack_map.u2( frames.length );
+    for ( int k = 0, prev = -1; k < frames.length; prev = frames[k++] )
+    {
+      int delta = frames[k] - prev - 1;
+      if ( delta <= 63 ) stack_map.u1( delta );                   // same_frame
+      else               stack_map.u1( 251 ).u2( delta );         // same_frame_extended
+    }
+
+    cf.u2( 0x0001 ).u2( CP_WALK ).u2( CP_WALK_TYPE ).u2( 1 );
+    cf.u2( CP_CODE ).u4( 12 + code.size + 6 + stack_map.size );
+    cf.u2( 2 ).u2( 5 ).u4( code.size ).bytes( code.bytes, code.size );
+    cf.u2( 0 );                                                   // no exception table
+    cf.u2( 1 ).u2( CP_STACK_MAP ).u4( stack_map.size ).bytes( stack_map.bytes, stack_map.size );
+
+    cf.u2( 0 );                                                   // no class attributes
+    return Arrays.copyOf( cf.bytes, cf.size );
+  }
+
+  public static void main( String args[] )
+  {
+    String[] patterns = { "(s|t)*stt", "(a|b)*a(a|b)(a|b)(a|b)", "ab|cd", "", "a+b?", "x(\u4e2d|y)*z", "(s|t|x)*error(s|t|x)*" };
+
+    Random random = new Random( 19 );
+    for ( String p : patterns )
+    {
+      DFA         dfa      = Regex.compile( p ).dfa();
+      BytecodeDFA compiled = BytecodeDFA.compile( dfa );
+      assert compiled != null : p;
+
+      for ( int n = 0; n < 500; n++ )
+      {
+        StringBuilder sb = new StringBuilder();
+        int len = random.nextInt( 12 );
+        for ( int i = 0; i < len; i++ ) sb.append( "abcdstxyz\u4e2derror".charAt( random.nextInt( 15 ) ) );
+        if ( n % 3 == 0 ) sb.append( "stt" );
+
+        assert compiled.simulate( sb ) == dfa.simulate( sb ) : p + " ~ " + sb;
+
+        for ( int s = 0; s < dfa.count(); s++ )
+          assert compiled.walk( s, sb, 0, sb.length() ) == dfa.walk( s, sb, 0, sb.length() ) : p + " ~ " + sb;
+      }
+
+      assert compiled.walk( DFA.DEAD, "a", 0, 1 ) == DFA.DEAD;
+    }
+
+    // Too large for the JIT: the table stays
+
+    assert BytecodeDFA.compile( Regex.compile( "(a|b)*a" + "(a|b)".repeat( 10 ) ).dfa() ) == null;
+
+    // A long input, against the table
+
+    DFA         dfa      = Regex.compile( "(s|t)*stt" ).dfa();
+    BytecodeDFA compiled = BytecodeDFA.compile( dfa );
+    String      huge     = "st".repeat( 1 << 20 ) + "t";
+
+    for ( int round = 0; round < 5; round++ )
+    {
+      long t0 = System.nanoTime();
+      boolean by_table = dfa.simulate( huge );
+      long t1 = System.nanoTime();
+      boolean by_code  = compiled.simulate( huge );
+      long t2 = System.nanoTime();
+
+      assert by_table && by_code;
+      if ( round == 4 )
+        System.out.println( String.format( "2 MB: %d us by table, %d us by bytecode", ( t1 - t0 ) / 1000, ( t2 - t1 ) / 1000 ) );
+    }
+  }
+}
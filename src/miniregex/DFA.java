@@ -0,0 +1,720 @@
+package miniregex;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/** A deterministic automaton over a flat transition table.
+ *
+ *  A DFA is built by adding transitions and marks to it, then
+ *  frozen: freeze() turns every later change into an
+ *  IllegalStateException, after which the DFA is only ever read
+ *  and any number of threads can run it at once. Regex, PatternSet
+ *  and DFAFile.read() hand out frozen DFAs only; clone() one to
+ *  change it.
+ */
+final class DFA implements Cloneable
+{
+  /** Marks a missing transition, the DFA rejects as soon as it
+   *  would have to follow one.
+   */
+  static final int DEAD = -1;
+
+  private       int    start = 0;
+  private final long[] finalMarks;
+
+  /** For a DFA built from several patterns (see PatternSet), the
+   *  sorted ids of the patterns each final state matches. null
+   *  for a DFA of a single pattern.
+   */
+  private int[][] matchIds;
+
+  static final int[] NO_MATCHES = new int[0];
+
+  /** The DFA's transition table is a flat array of state
+   *  numbers. States are numbered 0..count()-1 and the inputs
+   *  are grouped into classes 0..nclasses-1 of characters that
+   *  behave the same everywhere in the DFA, so the state reached
+   *  from S on input c is found at
+   *
+   *    transtbl[S * nclasses + classmap[c]]
+   *
+   *  classmap only reaches up to the highest character the DFA
+   *  has a transition on; class 0 is for every character it has
+   *  no transition on, including those beyond classmap.
+   */
+  private final int[]  transtbl;
+  private final char[] classmap;
+  private final int    nclasses;
+  private final int    count;
+
+  /** Set by freeze(), never reset. A plain field: a frozen DFA is
+   *  published through the final fields of whatever holds it.
+   */
+  private boolean _frozen;
+
+  @Override
+  public DFA clone() { return new DFA( this ); }
+
+  /** Builds a DFA with no transitions, in which every character
+   *  of alphabet has a class of its own.
+   */
+  public DFA( int count, char[] alphabet )
+  {
+    char max = 0;
+    for ( char c : alphabet ) max = ( char )Math.max( max, c );
+
+    char[] sorted = alphabet.clone();
+    Arrays.sort( sorted );
+
+    char[] classmap = new char[ alphabet.length == 0 ? 0 : max + 1 ];
+    int nclasses = 1;
+    for ( int i = 0; i < sorted.length; i++ )
+      if ( i == 0 || sorted[i] != sorted[i - 1] )
+        classmap[ sorted[i] ] = ( char )nclasses++;
+
+    this.count      = count;
+    this.classmap   = classmap;
+    this.nclasses   = nclasses;
+    this.transtbl   = new int[ count * nclasses ];
+    this.finalMarks = new long[ ( count + 63 ) >>> 6 ];
+
+    Arrays.fill( this.transtbl, DEAD );
+  }
+
+  private DFA( int count, char[] classmap, int nclasses )
+  {
+    this( count, classmap, nclasses, new int[ count * nclasses ], new long[ ( count + 63 ) >>> 6 ] );
+    Arrays.fill( this.transtbl, DEAD );
+  }
+
+  /** A DFA over the given tables, which it keeps, e.g. as read
+   *  back by DFAFile.
+   */
+  DFA( int count, char[] classmap, int nclasses, int[] transtbl, long[] finalMarks )
+  {
+    if ( transtbl.length != count * nclasses || finalMarks.length != ( count + 63 ) >>> 6 )
+      throw new IllegalArgumentException( "tables of the wrong size for " + count + " states" );
+
+    this.count      = count;
+    this.classmap   = classmap;
+    this.nclasses   = nclasses;
+    this.transtbl   = transtbl;
+    this.finalMarks = finalMarks;
+  }
+
+  public DFA( DFA src )
+  {
+    this.count      = src.count;
+    this.classmap   = src.classmap;
+    this.nclasses   = src.nclasses;
+    this.transtbl   = src.transtbl.clone();
+    this.finalMarks = src.finalMarks.clone();
+    this.matchIds   = src.matchIds == null ? null : src.matchIds.clone();
+    this.start      = src.start;
+  }
+
+  public int count()    { return count;    }
+  public int nclasses() { return nclasses; }
+  public int start()    { return start;    }
+
+  public void setStart( int s )
+  {
+    _checkNotFrozen();
+    this.start = s;
+  }
+
+  /** Makes the DFA read-only from now on, and returns it.
+   */
+  public DFA freeze()
+  {
+    _frozen = true;
+    return this;
+  }
+
+  public boolean isFrozen() { return _frozen; }
+
+  private void _checkNotFrozen()
+  {
+    if ( _frozen ) throw new IllegalStateException( "the DFA is frozen, clone() it to change it" );
+  }
+
+  /** The size of the transition table and the class map, in
+   *  bytes.
+   */
+  public long tableBytes() { return 4L * transtbl.length + 2L * classmap.length; }
+
+  int _class( char c ) { return c < classmap.length ? classmap[c] : 0; }
+
+  /** Copies of the tables, for the code that compiles or writes
+   *  them out: the DFA's own never leave it.
+   */
+  char[] _classmap()   { return classmap.clone();   }
+  int[]  _transtbl()   { return transtbl.clone();   }
+  long[] _finalMarks() { return finalMarks.clone(); }
+
+  /** Whether the DFA has pattern ids, see setMatchIds().
+   */
+  boolean hasMatchIds() { return matchIds != null; }
+
+  /** Sets the transition from state from to state to on input in
+   *  and on every other character of its class.
+   */
+  public void addTransition( int from, int to, Input in )
+  {
+    _checkNotFrozen();
+
+    if ( in == Input.NONE ) return;
+    if ( in == Input.EPS  ) throw new RuntimeException( "DFA does not support NULL input" );
+
+    if ( in.isSupplementary() )
+      throw new IllegalArgumentException( "Input " + in + " is two chars, DFAs move on one" );
+
+    int cls = _class( ( char )in.v );
+    if ( cls == 0 )
+      throw new IllegalArgumentException( "Input " + in + " is not in the DFA's alphabet" );
+
+    this.transtbl[ from * nclasses + cls ] = to;
+  }
+
+  public void addFinalMark( int s )
+  {
+    _checkNotFrozen();
+    finalMarks[ s >>> 6 ] |= 1L << s;
+  }
+
+  public boolean isFinal( int s ) { return ( finalMarks[ s >>> 6 ] & ( 1L << s ) ) != 0; }
+
+  public void setMatchIds( int s, int[] ids )
+  {
+    _checkNotFrozen();
+    if ( matchIds == null ) matchIds = new int[ count ][];
+    matchIds[s] = ids;
+  }
+
+  /** The ids of the patterns state s matches, NO_MATCHES when it
+   *  matches none or when the DFA has no pattern ids. The array is
+   *  the DFA's and must not be modified, as PatternSet.matches()
+   *  says.
+   */
+  public int[] matchIds( int s )
+  {
+    int[] ids = matchIds == null ? null : matchIds[s];
+    return ids == null ? NO_MATCHES : ids;
+  }
+
+  /** Returns the state reached from s on input c, or DEAD.
+   */
+  public int next( int s, char c ) { return transtbl[ s * nclasses + _class( c ) ]; }
+
+  /** The state reached from s on the characters of class cls, for
+   *  callers that move many states on the same character.
+   */
+  int _next( int s, int cls ) { return transtbl[ s * nclasses + cls ]; }
+
+  /** Runs the DFA over the whole input and tells whether it ends
+   *  in a final state. The loop keeps nothing but the current
+   *  state number, so it allocates nothing and its cost is linear
+   *  in the input's length.
+   */
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int to ) { return _accepts( walk( this.start, in, from, to ) ); }
+
+  public boolean simulate( char[] in ) { return simulate( in, 0, in.length ); }
+
+  public boolean simulate( char[] in, int off, int len ) { return _accepts( walk( this.start, in, off, len ) ); }
+
+  /** Matches the remaining characters of the buffer. The buffer's
+   *  position is left untouched.
+   */
+  public boolean simulate( CharBuffer in ) { return _accepts( walk( this.start, in ) ); }
+
+  private boolean _accepts( int s ) { return s != DEAD && isFinal( s ); }
+
+  /** Runs the DFA from state s over in[from..to) and returns the
+   *  state it ends in, DEAD if it got stuck on the way. Walks can
+   *  be chained, to run the DFA over an input that comes in
+   *  pieces.
+   */
+  public int walk( int s, CharSequence in, int from, int to )
+  {
+    for ( int i = from; i < to && s != DEAD; i++ )
+      s = next( s, in.charAt( i ) );
+
+    return s;
+  }
+
+  public int walk( int s, char[] in, int off, int len )
+  {
+    for ( int i = off, end = off + len; i < end && s != DEAD; i++ )
+      s = next( s, in[i] );
+
+    return s;
+  }
+
+  public int walk( int s, CharBuffer in )
+  {
+    if ( in.hasArray() )
+      return walk( s, in.array(), in.arrayOffset() + in.position(), in.remaining() );
+
+    for ( int i = in.position(), end = in.limit(); i < end && s != DEAD; i++ )
+      s = next( s, in.get( i ) );
+
+    return s;
+  }
+
+  /** Returns the minimal DFA that recognizes the same language.
+   *
+   *  The states are partitioned with Hopcroft's algorithm, which
+   *  runs in O(k n log n) for n states over k symbols: starting
+   *  from {final, non-final} (the final states being further
+   *  split by the patterns they match, when there are pattern
+   *  ids), a block that has predecessors both
+   *  inside and outside the predecessors of a splitter block on
+   *  some symbol is split in two, and only the smaller half needs
+   *  to become a splitter itself. An extra sink state stands for
+   *  the DEAD transitions, so that the states from which no final
+   *  state can be reached end up in its block and vanish.
+   *
+   *  The blocks are then numbered breadth-first from the start
+   *  state, in symbol order, so equal languages over the same
+   *  alphabet give identical DFAs.
+   */
+  public DFA minimized()
+  {
+    final int k    = nclasses;
+    final int n    = count + 1;
+    final int sink = count;
+
+    // Predecessors of state t on symbol sym are
+    // preds[ pred_at[ sym * n + t ] ... pred_at[ sym * n + t + 1 ] - 1 ]
+
+    int[] pred_at = new int[ k * n + 1 ];
+    int[] preds   = new int[ k * n ];
+
+    for ( int q = 0; q < n; q++ )
+      for ( int sym = 0; sym < k; sym++ )
+        pred_at[ sym * n + _target( q, sym ) + 1 ]++;
+
+    for ( int i = 0; i < k * n; i++ ) pred_at[i + 1] += pred_at[i];
+
+    int[] fill = Arrays.copyOf( pred_at, k * n );
+    for ( int q = 0; q < n; q++ )
+      for ( int sym = 0; sym < k; sym++ )
+        preds[ fill[ sym * n + _target( q, sym ) ]++ ] = q;
+
+    // The partition: the states of block b are
+    // elems[ first[b] ... last[b] - 1 ], and loc[q] is the index
+    // of q in elems. While a splitter is processed, the marked
+    // states of b are moved to the front of its range.
+
+    int[] elems  = new int[n];
+    int[] loc    = new int[n];
+    int[] block  = new int[n];
+    int[] first  = new int[n];
+    int[] last   = new int[n];
+    int[] marked = new int[n];
+    int   nblocks = 0;
+
+    // The initial blocks: the non-final states (with the sink)
+    // first, then one block per distinct set of pattern ids
+
+    Map<IntBuffer, Integer> labels = new HashMap<>();
+    int[] label = new int[n];
+
+    for ( int q = 0; q < count; q++ )
+    {
+      if ( !isFinal( q ) ) continue;
+
+      Integer l = labels.putIfAbsent( IntBuffer.wrap( matchIds( q ) ), labels.size() + 1 );
+      label[q] = l != null ? l : labels.size();
+    }
+
+    int[] size_of = new int[ labels.size() + 1 ];
+    for ( int q = 0; q < n; q++ ) size_of[ label[q] ]++;
+
+    for ( int l = 0; l < size_of.length; l++ )
+    {
+      first[l] = l == 0 ? 0 : first[l - 1] + size_of[l - 1];
+      last[l]  = first[l];
+    }
+
+    for ( int q = 0; q < n; q++ )
+    {
+      int l = label[q];
+      elems[ last[l] ] = q;
+      loc[q]           = last[l]++;
+      block[q]         = l;
+    }
+
+    nblocks = size_of.length;
+
+    // Every initial block but the largest one is a splitter
+
+    boolean[] waiting  = new boolean[n];
+    int[]     worklist = new int[n];
+    int       nwaiting = 0;
+
+    int largest = 0;
+    for ( int b = 1; b < nblocks; b++ )
+      if ( last[b] - first[b] > last[largest] - first[largest] ) largest = b;
+
+    for ( int b = 0; b < nblocks; b++ )
+    {
+      if ( b == largest ) continue;
+
+      worklist[nwaiting++] = b;
+      waiting[b]           = true;
+    }
+
+    int[] splitter = new int[n];
+    int[] touched  = new int[n];
+
+    while ( nwaiting > 0 )
+    {
+      int a = worklist[--nwaiting];
+      waiting[a] = false;
+
+      int splitter_sz = last[a] - first[a];
+      System.arraycopy( elems, first[a], splitter, 0, splitter_sz );
+
+      for ( int sym = 0; sym < k; sym++ )
+      {
+        int ntouched = 0;
+
+        for ( int j = 0; j < splitter_sz; j++ )
+        {
+          int t = splitter[j];
+
+          for ( int pi = pred_at[ sym * n + t ]; pi < pred_at[ sym * n + t + 1 ]; pi++ )
+          {
+            int p = preds[pi];
+            int b = block[p];
+            int boundary = first[b] + marked[b];
+
+            if ( loc[p] < boundary ) continue; // already marked
+
+            int other = elems[boundary];
+            elems[ loc[p] ] = other;
+            loc[other]      = loc[p];
+            elems[boundary] = p;
+            loc[p]          = boundary;
+
+            if ( marked[b]++ == 0 ) touched[ntouched++] = b;
+          }
+        }
+
+        for ( int j = 0; j < ntouched; j++ )
+        {
+          int b = touched[j];
+
+          if ( marked[b] == last[b] - first[b] ) { marked[b] = 0; continue; }
+
+          int nb = nblocks++;
+          first[nb] = first[b];
+          last[nb]  = first[b] + marked[b];
+          first[b]  = last[nb];
+          marked[b] = 0;
+
+          for ( int e = first[nb]; e < last[nb]; e++ ) block[ elems[e] ] = nb;
+
+          if ( waiting[b] || last[nb] - first[nb] <= last[b] - first[b] ) {
+            worklist[nwaiting++] = nb;
+            waiting[nb] = true;
+          } else {
+            worklist[nwaiting++] = b;
+            waiting[b] = true;
+          }
+        }
+      }
+    }
+
+    // Number the blocks reachable from the start state, leaving
+    // out the sink's block.
+
+    int[] number = new int[nblocks];
+    int[] order  = new int[nblocks];
+    int   m      = 0;
+
+    Arrays.fill( number, DEAD );
+
+    if ( block[start] != block[sink] )
+    {
+      number[ block[start] ] = m;
+      order[m++] = block[start];
+    }
+
+    for ( int j = 0; j < m; j++ )
+    {
+      int q = elems[ first[ order[j] ] ];
+
+      for ( int sym = 0; sym < k; sym++ )
+      {
+        int b = block[ _target( q, sym ) ];
+        if ( b == block[sink] || number[b] != DEAD ) continue;
+
+        number[b]  = m;
+        order[m++] = b;
+      }
+    }
+
+    DFA min = new DFA( Math.max( m, 1 ), classmap, nclasses );
+
+    for ( int j = 0; j < m; j++ )
+    {
+      int q = elems[ first[ order[j] ] ];
+
+      if ( isFinal( q ) ) min.addFinalMark( j );
+      if ( matchIds != null && matchIds[q] != null ) min.setMatchIds( j, matchIds[q] );
+
+      for ( int sym = 0; sym < k; sym++ )
+        min.transtbl[ j * k + sym ] = number[ block[ _target( q, sym ) ] ];
+    }
+
+    return min._compressed();
+  }
+
+  /** Merges the classes whose columns in the transition table are
+   *  identical, i.e. the characters the DFA can't tell apart. The
+   *  characters it never moves on all end up in class 0, and the
+   *  class map is cut after the last character of another class.
+   */
+  private DFA _compressed()
+  {
+    Map<IntBuffer, Integer> columns = new HashMap<>();
+    int[] remap = new int[ nclasses ];
+
+    for ( int cls = 0; cls < nclasses; cls++ )
+    {
+      int[] column = new int[ count ];
+      for ( int s = 0; s < count; s++ ) column[s] = transtbl[ s * nclasses + cls ];
+
+      // Class 0 comes first and its column is all DEAD, so it
+      // keeps number 0
+
+      Integer merged = columns.putIfAbsent( IntBuffer.wrap( column ), columns.size() );
+      remap[cls] = merged != null ? merged : columns.size() - 1;
+    }
+
+    if ( columns.size() == nclasses ) return this;
+
+    int length = 0;
+    for ( int c = 0; c < classmap.length; c++ )
+      if ( remap[ classmap[c] ] != 0 ) length = c + 1;
+
+    char[] compressed_classmap = new char[ length ];
+    for ( int c = 0; c < length; c++ )
+      compressed_classmap[c] = ( char )remap[ classmap[c] ];
+
+    DFA compressed = new DFA( count, compressed_classmap, columns.size() );
+    compressed.start    = start;
+    compressed.matchIds = matchIds == null ? null : matchIds.clone();
+    System.arraycopy( finalMarks, 0, compressed.finalMarks, 0, finalMarks.length );
+
+    for ( int s = 0; s < count; s++ )
+      for ( int cls = 0; cls < nclasses; cls++ )
+        compressed.transtbl[ s * compressed.nclasses + remap[cls] ] = transtbl[ s * nclasses + cls ];
+
+    return compressed;
+  }
+
+  /** The target of q on symbol sym, with the sink (state count)
+   *  standing for DEAD.
+   */
+  private int _target( int q, int sym )
+  {
+    int to = q == count ? DEAD : transtbl[ q * nclasses + sym ];
+    return to == DEAD ? count : to;
+  }
+
+  public void show()
+  {
+    System.out.println( String.format( "This DFA got %d states over %d input classes", count, nclasses ) );
+    System.out.println( "DFA start state: s" + this.start );
+    System.out.println( "DFA final state(s): {" );
+
+    for ( int s = 0; s < count; s++ )
+      if ( isFinal( s ) )
+        System.out.println( "\ts" + s + "," );
+
+    System.out.println( "}" );
+
+    String[] inputs = new String[ nclasses ];
+    for ( int c = 0; c < classmap.length; c++ )
+    {
+      int cls = classmap[c];
+      if ( cls == 0 ) continue;
+
+      inputs[cls] = inputs[cls] == null ? "'" + ( char )c + "'" : inputs[cls] + ", '" + ( char )c + "'";
+    }
+
+    for ( int s = 0; s < count; s++ )
+    {
+      for ( int cls = 1; cls < nclasses; cls++ )
+      {
+        int to = transtbl[ s * nclasses + cls ];
+        if ( to != DEAD )
+          System.out.println( String.format( "Transitions from s%d to s%d on input %s", s, to, inputs[cls] ) );
+      }
+    }
+  }
+
+  public static void main( String args[] )
+  {
+    DFA dfa = new DFA( 3, new char[]{ 's', 'a', 'b' } );
+
+    dfa.addTransition( 0, 1, new Input( 'a' ) );
+    dfa.addTransition( 1, 1, new Input( 'a' ) );
+    dfa.addTransition( 1, 2, Input.NONE );
+    dfa.addTransition( 1, 2, new Input( 's' ) );
+    dfa.addTransition( 0, 0, new Input( 'b' ) );
+
+    dfa.addFinalMark( 0 );
+    dfa.addFinalMark( 1 );
+    dfa.addFinalMark( 2 );
+
+    try {
+      dfa.addTransition( 1, 2, Input.EPS );
+    } catch ( RuntimeException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    try {
+      dfa.addTransition( 1, 2, new Input( 'z' ) );
+      assert false : "'z' is not part of the alphabet";
+    } catch ( IllegalArgumentException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    dfa.show();
+
+    assert dfa.simulate( "aaaas" );
+    assert dfa.simulate( "bbbb" );
+    assert !dfa.simulate( "st" );
+    assert !dfa.simulate( "zz" );
+
+    char[] chars = "xbbaaasx".toCharArray();
+    assert dfa.simulate( chars, 1, 6 );
+    assert !dfa.simulate( chars, 0, 6 );
+    assert dfa.simulate( "xbbaaasx", 1, 7 );
+    assert dfa.simulate( CharBuffer.wrap( chars, 1, 6 ) );
+    assert !dfa.simulate( CharBuffer.wrap( chars ) );
+
+    CharBuffer direct = java.nio.ByteBuffer.allocateDirect( 16 ).asCharBuffer();
+    direct.put( "aaas" ).flip();
+    assert dfa.simulate( direct );
+    assert direct.position() == 0;
+
+    StringBuilder huge = new StringBuilder( "a" );
+    for ( int i = 0; i < 1 << 20; i++ ) huge.append( 'a' );
+    assert dfa.simulate( huge );
+
+    DFA min = dfa.minimized();
+    assert min.count() == 3;
+    assert min.nclasses() == 4;
+    assert min.simulate( "aaaas" ) && min.simulate( "bbbb" ) && !min.simulate( "st" );
+
+    // s1 and s3 are the same state, s2 and s4 too, and no final
+    // state is reachable from s5: a*b(ab)* needs three states,
+    // one of them being s0.
+
+    DFA redundant = new DFA( 6, new char[]{ 'a', 'b' } );
+
+    redundant.addTransition( 0, 0, new Input( 'a' ) );
+    redundant.addTransition( 0, 1, new Input( 'b' ) );
+    redundant.addTransition( 1, 2, new Input( 'a' ) );
+    redundant.addTransition( 1, 5, new Input( 'b' ) );
+    redundant.addTransition( 2, 3, new Input( 'b' ) );
+    redundant.addTransition( 3, 4, new Input( 'a' ) );
+    redundant.addTransition( 4, 1, new Input( 'b' ) );
+    redundant.addTransition( 5, 5, new Input( 'a' ) );
+    redundant.addFinalMark( 1 );
+    redundant.addFinalMark( 3 );
+
+    DFA redundant_min = redundant.minimized();
+    redundant_min.show();
+
+    assert redundant_min.count() == 3;
+    assert redundant_min.nclasses() == 3;
+    for ( String in : new String[]{ "", "b", "ab", "aaabab", "bababab", "bb", "ba", "abba", "bbaa" } )
+      assert redundant.simulate( in ) == redundant_min.simulate( in ) : in;
+
+    DFA empty = new DFA( 2, new char[]{ 'a' } );
+    empty.addTransition( 0, 1, new Input( 'a' ) );
+    assert empty.minimized().count() == 1;
+    assert !empty.minimized().simulate( "" ) && !empty.minimized().simulate( "a" );
+
+    // 'a', 'b' and 'c' can't be told apart, 'z' is never moved on
+
+    DFA abc = new DFA( 2, new char[]{ 'a', 'b', 'c', 'd', 'z' } );
+    for ( char c : "abc".toCharArray() )
+    {
+      abc.addTransition( 0, 1, new Input( c ) );
+      abc.addTransition( 1, 1, new Input( c ) );
+    }
+    abc.addTransition( 1, 0, new Input( 'd' ) );
+    abc.addFinalMark( 1 );
+
+    DFA abc_min = abc.minimized();
+    abc_min.show();
+
+    assert abc_min.nclasses() == 3;
+    assert abc_min.tableBytes() == 4 * 2 * 3 + 2 * ( 'd' + 1 );
+    assert abc_min.simulate( "abcbadc" ) && !abc_min.simulate( "abd" ) && !abc_min.simulate( "az" );
+
+    DFA cloned = dfa.clone();
+    cloned.addTransition( 2, 2, new Input( 's' ) );
+
+    assert cloned.simulate( "ass" );
+    assert !dfa.simulate( "ass" );
+
+    // A frozen DFA refuses changes, its clones don't
+
+    DFA frozen = cloned.freeze();
+    assert frozen == cloned && frozen.isFrozen();
+
+    try {
+      frozen.addTransition( 0, 0, new Input( 'a' ) );
+      assert false : "the DFA is frozen";
+    } catch ( IllegalStateException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    try {
+      frozen.addFinalMark( 0 );
+      assert false : "the DFA is frozen";
+    } catch ( IllegalStateException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    try {
+      frozen.setStart( 1 );
+      assert false : "the DFA is frozen";
+    } catch ( IllegalStateException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    try {
+      frozen.setMatchIds( 0, new int[]{ 0 } );
+      assert false : "the DFA is frozen";
+    } catch ( IllegalStateException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    // and hands out copies of its tables only
+
+    int     next_0  = frozen.next( 0, 'a' );
+    boolean final_1 = frozen.isFinal( 1 );
+
+    Arrays.fill( frozen._transtbl(), DEAD );
+    Arrays.fill( frozen._finalMarks(), 0 );
+    Arrays.fill( frozen._classmap(), ( char )0 );
+    assert next_0 != DEAD && frozen.next( 0, 'a' ) == next_0 && final_1 && frozen.isFinal( 1 );
+
+    DFA thawed = frozen.clone();
+    assert !thawed.isFrozen();
+    thawed.addTransition( 2, 2, new Input( 'a' ) );
+    assert thawed.simulate( "assa" ) && !frozen.simulate( "assa" );
+  }
+}
@@ -0,0 +1,296 @@
+package miniregex;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/** Compiled DFAs on disk. A DFA is written as its tables, laid out
+ *  so that they can be used where they lie: read() copies them
+ *  into a DFA in a few bulk copies, and map() matches straight out
+ *  of the mapped file, which every process that maps it shares
+ *  through the page cache. Neither rebuilds anything, loading
+ *  costs the same whatever the patterns were.
+ *
+ *  The format, little-endian, every section starting on a multiple
+ *  of 8 bytes:
+ *
+ *    header      magic "MRDF", version, count, nclasses, start,
+ *                the length of the class map, flags (1: there are
+ *                pattern ids) and the number of pattern ids, as 8
+ *                ints
+ *    classmap    char[ classmap length ]
+ *    finals      long[ (count + 63) / 64 ], the final states' bits
+ *    transtbl    int[ count * nclasses ], as in DFA
+ *    id offsets  int[ count + 1 ], only with pattern ids: state s
+ *                matches ids[ offset[s] .. offset[s + 1] )
+ *    ids         int[ number of pattern ids ]
+ *
+ *  A reader refuses any other version than its own.
+ */
+final class DFAFile
+{
+  static final int MAGIC   = 'M' | 'R' << 8 | 'D' << 16 | 'F' << 24;
+  static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 32;
+  private static final int HAS_IDS      = 1;
+
+  /** Where the sections of a DFA's file are, from its header.
+   */
+  static final class AdHocLayout
+  {
+    final int     count;
+    final int     nclasses;
+    final int     start;
+    final int     classmapLength;
+    final boolean hasIds;
+    final int     nids;
+
+    final int classmapAt;
+    final int finalsAt;
+    final int transtblAt;
+    final int idOffsetsAt;
+    final int idsAt;
+    final int size;
+
+    AdHocLayout( int count, int nclasses, int start, int classmapLength, boolean hasIds, int nids )
+    {
+      this.count          = count;
+      this.nclasses       = nclasses;
+      this.start          = start;
+      this.classmapLength = classmapLength;
+      this.hasIds         = hasIds;
+      this.nids           = nids;
+
+      long at = HEADER_BYTES;
+      this.classmapAt  = ( int )at; at = _align( at + 2L * classmapLength );
+      this.finalsAt    = ( int )at; at = _align( at + 8L * StateSet.words( count ) );
+      this.transtblAt  = ( int )at; at = _align( at + 4L * count * nclasses );
+      this.idOffsetsAt = ( int )at; at = _align( at + ( hasIds ? 4L * ( count + 1 ) : 0 ) );
+      this.idsAt       = ( int )at; at = _align( at + 4L * nids );
+
+      if ( at > Integer.MAX_VALUE )
+        throw new IllegalArgumentException( "DFA too large for the file format: " + at + " bytes" );
+
+      this.size = ( int )at;
+    }
+
+    private static long _align( long at ) { return ( at + 7 ) & ~7L; }
+
+    static AdHocLayout of( ByteBuffer buf ) throws IOException
+    {
+      if ( buf.capacity() < HEADER_BYTES || buf.getInt( 0 ) != MAGIC )
+        throw new IOException( "not a compiled DFA" );
+
+      if ( buf.getInt( 4 ) != VERSION )
+        throw new IOException( "unsupported compiled DFA version " + buf.getInt( 4 ) + ", expected " + VERSION );
+
+      int count          = buf.getInt( 8 );
+      int nclasses       = buf.getInt( 12 );
+      int start          = buf.getInt( 16 );
+      int classmapLength = buf.getInt( 20 );
+      int flags          = buf.getInt( 24 );
+      int nids           = buf.getInt( 28 );
+
+      if ( count < 1 || nclasses < 1 || start < 0 || start >= count || classmapLength < 0 || nids < 0 )
+        throw new IOException( "corrupted compiled DFA header" );
+
+      AdHocLayout layout;
+      try {
+        layout = new AdHocLayout( count, nclasses, start, classmapLength, ( flags & HAS_IDS ) != 0, nids );
+      } catch ( IllegalArgumentException ex ) {
+        throw new IOException( "corrupted compiled DFA header", ex );
+      }
+
+      if ( layout.size != buf.capacity() )
+        throw new IOException( "truncated compiled DFA: " + buf.capacity() + " of " + layout.size + " bytes" );
+
+      return layout;
+    }
+  }
+
+  private DFAFile() {}
+
+  public static void write( DFA dfa, Path file ) throws IOException
+  {
+    boolean has_ids = dfa.hasMatchIds();
+
+    int nids = 0;
+    if ( has_ids )
+      for ( int s = 0; s < dfa.count(); s++ ) nids += dfa.matchIds( s ).length;
+
+    char[] classmap = dfa._classmap();
+    AdHocLayout layout = new AdHocLayout( dfa.count(), dfa.nclasses(), dfa.start(), classmap.length, has_ids, nids );
+
+    ByteBuffer buf = ByteBuffer.allocate( layout.size ).order( ByteOrder.LITTLE_ENDIAN );
+
+    buf.putInt( MAGIC ).putInt( VERSION ).putInt( layout.count ).putInt( layout.nclasses )
+       .putInt( layout.start ).putInt( layout.classmapLength ).putInt( layout.hasIds ? HAS_IDS : 0 ).putInt( nids );
+
+    buf.position( layout.classmapAt ); buf.asCharBuffer().put( classmap );
+    buf.position( layout.finalsAt );   buf.asLongBuffer().put( dfa._finalMarks() );
+    buf.position( layout.transtblAt ); buf.asIntBuffer().put( dfa._transtbl() );
+
+    if ( layout.hasIds )
+    {
+      IntBuffer offsets = buf.position( layout.idOffsetsAt ).asIntBuffer();
+      IntBuffer ids     = buf.position( layout.idsAt ).asIntBuffer();
+
+      for ( int s = 0; s < layout.count; s++ )
+      {
+        offsets.put( ids.position() );
+        ids.put( dfa.matchIds( s ) );
+      }
+      offsets.put( ids.position() );
+    }
+
+    buf.clear();
+
+    try ( FileChannel ch = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING ) )
+    {
+      while ( buf.hasRemaining() ) ch.write( buf );
+    }
+  }
+
+  /** Maps the file and copies its tables into a DFA on the heap.
+   *  The transitions are checked on the way, a corrupted file
+   *  can't make the DFA misbehave. The DFA comes back frozen.
+   */
+  public static DFA read( Path file ) throws IOException
+  {
+    ByteBuffer  buf    = _map( file );
+    AdHocLayout layout = AdHocLayout.of( buf );
+
+    char[] classmap = new char[ layout.classmapLength ];
+    buf.slice( layout.classmapAt, 2 * layout.classmapLength ).order( ByteOrder.LITTLE_ENDIAN ).asCharBuffer().get( classmap );
+
+    int[] transtbl = new int[ layout.count * layout.nclasses ];
+    buf.slice( layout.transtblAt, 4 * transtbl.length ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer().get( transtbl );
+
+    for ( int to : transtbl )
+      if ( to < DFA.DEAD || to >= layout.count )
+        throw new IOException( "corrupted compiled DFA: transition to " + to );
+
+    for ( char cls : classmap )
+      if ( cls >= layout.nclasses )
+        throw new IOException( "corrupted compiled DFA: class " + ( int )cls );
+
+    long[] finals = new long[ StateSet.words( layout.count ) ];
+    buf.slice( layout.finalsAt, 8 * finals.length ).order( ByteOrder.LITTLE_ENDIAN ).asLongBuffer().get( finals );
+
+    DFA dfa = new DFA( layout.count, classmap, layout.nclasses, transtbl, finals );
+    dfa.setStart( layout.start );
+
+    if ( layout.hasIds )
+    {
+      IntBuffer offsets = buf.slice( layout.idOffsetsAt, 4 * ( layout.count + 1 ) ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+      IntBuffer ids     = buf.slice( layout.idsAt, 4 * layout.nids ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+
+      for ( int s = 0; s < layout.count; s++ )
+      {
+        int from = offsets.get( s ), to = offsets.get( s + 1 );
+        if ( from < 0 || from > to || to > layout.nids )
+          throw new IOException( "corrupted compiled DFA: pattern ids of state " + s );
+
+        int[] state_ids = new int[ to - from ];
+        ids.get( from, state_ids );
+        dfa.setMatchIds( s, state_ids.length == 0 ? null : state_ids );
+      }
+    }
+
+    return dfa.freeze();
+  }
+
+  /** Maps the file and matches out of it. Only the header is
+   *  checked, the tables are trusted as they are.
+   */
+  public static MappedDFA map( Path file ) throws IOException
+  {
+    MappedByteBuffer buf = _map( file );
+    return new MappedDFA( buf, AdHocLayout.of( buf ) );
+  }
+
+  private static MappedByteBuffer _map( Path file ) throws IOException
+  {
+    try ( FileChannel ch = FileChannel.open( file, StandardOpenOption.READ ) )
+    {
+      if ( ch.size() > Integer.MAX_VALUE )
+        throw new IOException( "not a compiled DFA: " + ch.size() + " bytes" );
+
+      MappedByteBuffer buf = ch.map( FileChannel.MapMode.READ_ONLY, 0, ch.size() );
+      buf.order( ByteOrder.LITTLE_ENDIAN );
+      return buf;
+    }
+  }
+
+  public static void main( String args[] ) throws IOException
+  {
+    Path file = Files.createTempFile( "dfa", ".mrdf" );
+    try
+    {
+      DFA dfa = Regex.compile( "(s|t)*stt" ).dfa();
+      DFAFile.write( dfa, file );
+
+      DFA       read   = DFAFile.read( file );
+      MappedDFA mapped = DFAFile.map( file );
+
+      assert read.count() == dfa.count() && mapped.count() == dfa.count();
+      assert Files.size( file ) % 8 == 0;
+
+      for ( String in : new String[]{ "", "stt", "sststststtstt", "sttt", "tts", "stx", "ttstt" } )
+      {
+        assert read.simulate( in )   == dfa.simulate( in ) : in;
+        assert mapped.simulate( in ) == dfa.simulate( in ) : in;
+      }
+
+      // Pattern ids come back too
+
+      List<String> rules = new ArrayList<>();
+      for ( int i = 0; i < 300; i++ ) rules.add( "rule" + i + "(a|b)*" );
+      rules.add( "rule(0|1|2|3|4|5|6|7|8|9)+" );
+
+      PatternSet set = PatternSet.compile( rules );
+      DFAFile.write( set.dfa(), file );
+
+      read   = DFAFile.read( file );
+      mapped = DFAFile.map( file );
+
+      for ( String in : new String[]{ "rule42abba", "rule299", "rule12345", "rule42abc", "", "rule" } )
+      {
+        int s = set.dfa().walk( set.dfa().start(), in, 0, in.length() );
+        int[] expected = s == DFA.DEAD ? DFA.NO_MATCHES : set.dfa().matchIds( s );
+
+        int r = read.walk( read.start(), in, 0, in.length() );
+        assert Arrays.equals( r == DFA.DEAD ? DFA.NO_MATCHES : read.matchIds( r ), expected ) : in;
+
+        int m = mapped.walk( mapped.start(), in, 0, in.length() );
+        assert Arrays.equals( m == DFA.DEAD ? DFA.NO_MATCHES : mapped.matchIds( m ), expected ) : in;
+      }
+
+      System.out.println( String.format( "%d rules, %d states: %d bytes on disk",
+                                         set.size(), set.dfa().count(), Files.size( file ) ) );
+
+      // Other files, and other versions, are refused
+
+      byte[] bytes = Files.readAllBytes( file );
+
+      bytes[4] = 2;
+      Files.write( file, bytes );
+      try { DFAFile.read( file ); assert false; } catch ( IOException ex ) { System.out.println( "Catched the expected exception: \"" + ex + "\"" ); }
+
+      bytes[4] = 1;
+      Files.write( file, Arrays.copyOf( bytes, 100 ) );
+      try { DFAFile.map( file ); assert false; } catch ( IOException ex ) { System.out.println( "Catched the expected exception: \"" + ex + "\"" ); }
+
+      Files.write( file, "not a DFA".getBytes() );
+      try { DFAFile.read( file ); assert false; } catch ( IOException ex ) { System.out.println( "Catched the expected exception: \"" + ex + "\"" ); }
+    }
+    finally
+    {
+      Files.delete( file );
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package miniregex;
+
+import java.util.*;
+
+/** Compiles a pattern of Regex's syntax straight to its minimal
+ *  DFA, through the position automaton of Glushkov (the followpos
+ *  construction of Aho, Sethi and Ullman) instead of Thompson's
+ *  NFA.
+ *
+ *  Every character of the pattern is a position. The pattern is
+ *  parsed by Regex.parse() with a Glushkov as its combinators,
+ *  which compute, bottom-up for each subexpression, whether it
+ *  matches the empty string and the sets of positions that can
+ *  come first and last in its matches, and record for each
+ *  position the positions that can follow it:
+ *
+ *    xy   last(x) is followed by first(y)
+ *    x*   last(x) is followed by first(x)
+ *
+ *  A DFA state is then the set of positions the next character
+ *  can match, starting from first of the pattern, and the state
+ *  reached on c joins what follows the positions of c. There are
+ *  no eps-transitions to close over. The sets are trees of arrays
+ *  that share their subtrees, so parsing costs the length of the
+ *  pattern plus the sizes of the last sets that get followed,
+ *  linear for the usual patterns.
+ */
+final class Glushkov implements Regex.Combinators<Glushkov.AdHocNode>
+{
+  /** An immutable set of positions: either an array of them, or
+   *  the union of two sets. Unions take constant time and share
+   *  their operands, a set may hold a position more than once.
+   */
+  private static final class AdHocPositions
+  {
+    static final AdHocPositions EMPTY = new AdHocPositions( new int[0] );
+
+    final int[]          leaf;
+    final AdHocPositions left;
+    final AdHocPositions right;
+    final int            min;
+    final int            max;
+
+    AdHocPositions( int... leaf )
+    {
+      this.leaf  = leaf;
+      this.left  = null;
+      this.right = null;
+      this.min   = leaf.length == 0 ? Integer.MAX_VALUE : leaf[0];
+      this.max   = leaf.length == 0 ? -1 : leaf[ leaf.length - 1 ];
+    }
+
+    private AdHocPositions( AdHocPositions left, AdHocPositions right )
+    {
+      this.leaf  = null;
+      this.left  = left;
+      this.right = right;
+      this.min   = Math.min( left.min, right.min );
+      this.max   = Math.max( left.max, right.max );
+    }
+
+    static AdHocPositions union( AdHocPositions a, AdHocPositions b )
+    {
+      if ( a == EMPTY ) return b;
+      if ( b == EMPTY ) return a;
+      return new AdHocPositions( a, b );
+    }
+
+    /** Adds the positions to the bitset bits. The tree is walked
+     *  with an explicit stack, a long concatenation makes it as
+     *  deep as the pattern is long.
+     */
+    void addTo( long[] bits, ArrayDeque<AdHocPositions> stack )
+    {
+      stack.push( this );
+
+      while ( !stack.isEmpty() )
+      {
+        AdHocPositions set = stack.pop();
+
+        if ( set.leaf != null )
+        {
+          for ( int p : set.leaf ) StateSet.add( bits, p );
+          continue;
+        }
+
+        stack.push( set.right );
+        stack.push( set.left );
+      }
+    }
+  }
+
+  /** What parsing a subexpression yields.
+   */
+  static final class AdHocNode
+  {
+    final boolean        nullable;
+    final AdHocPositions first;
+    final AdHocPositions last;
+
+    AdHocNode( boolean nullable, AdHocPositions first, AdHocPositions last )
+    {
+      this.nullable = nullable;
+      this.first    = first;
+      this.last     = last;
+    }
+  }
+
+  private static final AdHocNode EMPTY = new AdHocNode( true, AdHocPositions.EMPTY, AdHocPositions.EMPTY );
+
+  /** The character of each position, and the positions that can
+   *  follow it.
+   */
+  private char[]           _symbols = new char[16];
+  private AdHocPositions[] _follow  = new AdHocPositions[16];
+  private int              _npositions;
+
+  private Glushkov() {}
+
+  public static DFA dfa( String pattern )
+  {
+    Glushkov  g    = new Glushkov();
+    AdHocNode root = Regex.parse( pattern, g );
+
+    // The end of the pattern is one more position, which follows
+    // the last ones and makes the DFA states that hold it final
+
+    int end = g._npositions;
+    g._followedBy( root.last, new AdHocPositions( end ) );
+
+    AdHocPositions start = root.nullable ? AdHocPositions.union( root.first, new AdHocPositions( end ) ) : root.first;
+    return g._subsetConstruction( start, end );
+  }
+
+  private int _newPosition( char c )
+  {
+    if ( _npositions == _symbols.length )
+    {
+      _symbols = Arrays.copyOf( _symbols, 2 * _npositions );
+      _follow  = Arrays.copyOf( _follow,  2 * _npositions );
+    }
+
+    _symbols[_npositions] = c;
+    _follow[_npositions]  = AdHocPositions.EMPTY;
+    return _npositions++;
+  }
+
+  /** Records that every position of last can be followed by every
+   *  position of next.
+   */
+  private void _followedBy( AdHocPositions last, AdHocPositions next )
+  {
+    ArrayDeque<AdHocPositions> stack = new ArrayDeque<>();
+    stack.push( last );
+
+    while ( !stack.isEmpty() )
+    {
+      AdHocPositions set = stack.pop();
+
+      if ( set.leaf != null )
+      {
+        for ( int p : set.leaf ) _follow[p] = AdHocPositions.union( _follow[p], next );
+        continue;
+      }
+
+      stack.push( set.right );
+      stack.push( set.left );
+    }
+  }
+
+  /** A character is one position, a supplementary one two: its
+   *  surrogates, as NFA.buildNFABasic() has them.
+   */
+  public AdHocNode symbol( Input in )
+  {
+    if ( in == Input.EPS ) return empty();
+
+    if ( in.isSupplementary() )
+      return concatenation( symbol( new Input( Character.highSurrogate( in.v ) ) ),
+                            symbol( new Input( Character.lowSurrogate( in.v ) ) ) );
+
+    AdHocPositions p = new AdHocPositions( _newPosition( ( char )in.v ) );
+    return new AdHocNode( false, p, p );
+  }
+
+  public AdHocNode empty() { return EMPTY; }
+
+  public AdHocNode concatenation( AdHocNode x, AdHocNode y )
+  {
+    _followedBy( x.last, y.first );
+
+    return new AdHocNode( x.nullable && y.nullable,
+                          x.nullable ? AdHocPositions.union( x.first, y.first ) : x.first,
+                          y.nullable ? AdHocPositions.union( x.last, y.last ) : y.last );
+  }
+
+  public AdHocNode alternation( AdHocNode x, AdHocNode y )
+  {
+    return new AdHocNode( x.nullable || y.nullable,
+                          AdHocPositions.union( x.first, y.first ),
+                          AdHocPositions.union( x.last, y.last ) );
+  }
+
+  public AdHocNode kleeneStar( AdHocNode x )
+  {
+    _followedBy( x.last, x.first );
+    return new AdHocNode( true, x.first, x.last );
+  }
+
+  public AdHocNode plus( AdHocNode x )
+  {
+    _followedBy( x.last, x.first );
+    return new AdHocNode( x.nullable, x.first, x.last );
+  }
+
+  public AdHocNode optional( AdHocNode x ) { return new AdHocNode( true, x.first, x.last ); }
+
+  /** The subset construction of NFA._subsetConstruction(), over
+   *  positions: the successor of a DFA state on the i-th symbol
+   *  of the alphabet is the union of what follows its positions
+   *  of that symbol.
+   */
+  private DFA _subsetConstruction( AdHocPositions start, int end )
+  {
+    char[] alphabet = Arrays.copyOf( _symbols, _npositions );
+    Arrays.sort( alphabet );
+
+    int nsymbols = 0;
+    for ( int i = 0; i < alphabet.length; i++ )
+      if ( i == 0 || alphabet[i] != alphabet[i - 1] ) alphabet[nsymbols++] = alphabet[i];
+    alphabet = Arrays.copyOf( alphabet, nsymbols );
+
+    int[] sym_of = new int[ _npositions ];
+    for ( int p = 0; p < _npositions; p++ ) sym_of[p] = Arrays.binarySearch( alphabet, _symbols[p] );
+
+    int                        words = StateSet.words( end + 1 );
+    ArrayDeque<AdHocPositions> stack = new ArrayDeque<>();
+
+    long[] scratch = new long[ words ];
+    start.addTo( scratch, stack );
+    StateSet start_dstate = new StateSet( scratch );
+
+    Map<StateSet, Integer> numbering = new HashMap<>();
+    List<StateSet>         dstates   = new ArrayList<>();
+    List<int[]>            rows      = new ArrayList<>();
+
+    numbering.put( start_dstate, 0 );
+    dstates.add( start_dstate );
+
+    long[][] buffers = new long[ nsymbols ][ words ];
+    int[]    lo      = new int[ nsymbols ];
+    int[]    hi      = new int[ nsymbols ];
+
+    Arrays.fill( lo, Integer.MAX_VALUE );
+
+    for ( int n = 0; n < dstates.size(); n++ )
+    {
+      StateSet cur_dstate = dstates.get( n );
+
+      for ( int p = cur_dstate.nextSetBit( 0 ); p >= 0; p = cur_dstate.nextSetBit( p + 1 ) )
+      {
+        if ( p == end || _follow[p] == AdHocPositions.EMPTY ) continue;
+
+        int sym = sym_of[p];
+        _follow[p].addTo( buffers[sym], stack );
+        lo[sym] = Math.min( lo[sym], _follow[p].min >>> 6 );
+        hi[sym] = Math.max( hi[sym], ( _follow[p].max >>> 6 ) + 1 );
+      }
+
+      int[] row = new int[ nsymbols ];
+
+      for ( int sym = 0; sym < nsymbols; sym++ )
+      {
+        if ( hi[sym] == 0 ) { row[sym] = DFA.DEAD; continue; }
+
+        StateSet next_dstate = new StateSet( buffers[sym], lo[sym], hi[sym] );
+        Arrays.fill( buffers[sym], lo[sym], hi[sym], 0L );
+        lo[sym] = Integer.MAX_VALUE;
+        hi[sym] = 0;
+
+        Integer to = numbering.get( next_dstate );
+        if ( to == null )
+        {
+          to = dstates.size();
+          numbering.put( next_dstate, to );
+          dstates.add( next_dstate );
+        }
+
+        row[sym] = to;
+      }
+
+      rows.add( row );
+    }
+
+    DFA dfa = new DFA( dstates.size(), alphabet );
+
+    for ( int from = 0; from < dstates.size(); from++ )
+    {
+      if ( dstates.get( from ).contains( end ) ) dfa.addFinalMark( from );
+
+      int[] row = rows.get( from );
+      for ( int sym = 0; sym < nsymbols; sym++ )
+        if ( row[sym] != DFA.DEAD )
+          dfa.addTransition( from, row[sym], new Input( alphabet[sym] ) );
+    }
+
+    return dfa.minimized();
+  }
+
+  public static void main( String args[] )
+  {
+    String smile = "\ud83d\ude00";
+
+    String[] patterns = { "(s|t)*stt", "(a|b)*a(a|b)(a|b)(a|b)", "ab|cd", "", "a+b?", "(a*)*b", "((a|)*|b)+c?",
+                          "x(" + smile + "|y)*z", "\\*\\(a\\)", "(s|t|x)*error(s|t|x)*", "a?a?a?aaa" };
+    String[] inputs   = { "", "stt", "sststt", "abab", "abbb", "ab", "cd", "a", "aab", "b", "aaab", "c", "abc",
+                          "x" + smile + "yz", "xz", "x\ud83dz", "*(a)", "ststerrorxx", "aaa", "aaaa", "aaaaaaa" };
+
+    for ( String p : patterns )
+    {
+      DFA glushkov = Glushkov.dfa( p );
+      DFA thompson = Regex.parse( p ).dfa();
+
+      assert glushkov.count() == thompson.count() : p;
+
+      for ( String in : inputs )
+        assert glushkov.simulate( in ) == thompson.simulate( in ) : p + " ~ " + in;
+    }
+
+    for ( String bad : new String[]{ "(a", "a)", "*a", "a\\" } )
+    {
+      try {
+        Glushkov.dfa( bad );
+        assert false : bad;
+      } catch ( IllegalArgumentException ex ) {
+        System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+      }
+    }
+
+    // Long patterns: a literal of 20000 characters, and a star
+    // over an alternation of 2000 words
+
+    StringBuilder literal = new StringBuilder();
+    for ( int i = 0; i < 20000; i++ ) literal.append( ( char )( 'a' + i % 26 ) );
+
+    StringBuilder words = new StringBuilder( "(" );
+    for ( int i = 0; i < 2000; i++ ) words.append( i == 0 ? "" : "|" ).append( "w" ).append( i );
+    words.append( ")*" );
+
+    for ( String p : new String[]{ literal.toString(), words.toString() } )
+    {
+      long t0 = System.nanoTime();
+      DFA glushkov = Glushkov.dfa( p );
+      long t1 = System.nanoTime();
+      DFA thompson = Regex.parse( p ).dfa();
+      long t2 = System.nanoTime();
+
+      assert glushkov.count() == thompson.count();
+      assert glushkov.simulate( p.startsWith( "(" ) ? "w1w1999w42" : p ) && thompson.simulate( p.startsWith( "(" ) ? "w1w1999w42" : p );
+
+      System.out.println( String.format( "%d characters: %d us by positions, %d us through the NFA",
+                                         p.length(), ( t1 - t0 ) / 1000, ( t2 - t1 ) / 1000 ) );
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package miniregex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Finds the lines of a file that a DFA matches, like grep -x.
+ *  The file is cut into chunks of about CHUNK_SIZE bytes that end
+ *  on line boundaries, and the chunks are memory-mapped and
+ *  scanned in parallel on a fork-join pool. The DFA runs straight
+ *  over the mapped bytes, each byte standing for the character of
+ *  the same code (ISO-8859-1), so nothing is decoded or copied.
+ *
+ *  A line is what lies between two '\n' (or the ends of the
+ *  file), without the '\n'.
+ *
+ *  Given a Regex with a required literal, the scan jumps from one
+ *  occurrence of the literal to the next and only runs the DFA on
+ *  the lines they fall in.
+ *
+ *  A chunk is mapped in pieces of at most MAP_SIZE bytes, the most
+ *  a MappedByteBuffer can hold. Only a line longer than that makes
+ *  a chunk that large, and the DFA then carries its state from
+ *  one piece to the next, over every byte: the literal isn't used
+ *  in such a chunk.
+ */
+final class Grep
+{
+  static final int CHUNK_SIZE = 8 << 20;
+  static final int MAP_SIZE   = Integer.MAX_VALUE;
+
+  private final String       pattern;
+  private final DFA          dfa;
+  private final Prefilter    prefilter;
+  private final ForkJoinPool pool;
+  private final int          chunkSize;
+  private final int          mapSize;
+
+  public Grep( DFA dfa )     { this( null, dfa, null, ForkJoinPool.commonPool(), CHUNK_SIZE, MAP_SIZE ); }
+  public Grep( Regex regex ) { this( regex, ForkJoinPool.commonPool(), CHUNK_SIZE );               }
+
+  public Grep( DFA dfa, ForkJoinPool pool, int chunkSize ) { this( null, dfa, null, pool, chunkSize, MAP_SIZE ); }
+
+  public Grep( Regex regex, ForkJoinPool pool, int chunkSize ) { this( regex, pool, chunkSize, MAP_SIZE ); }
+
+  /** A Grep that maps at most mapSize bytes at a time, for tests
+   *  of lines longer than a mapping.
+   */
+  Grep( Regex regex, ForkJoinPool pool, int chunkSize, int mapSize )
+  {
+    this( regex.pattern, regex.dfa(), regex.prefilter(), pool, chunkSize, mapSize );
+  }
+
+  private Grep( String pattern, DFA dfa, Prefilter prefilter, ForkJoinPool pool, int chunkSize, int mapSize )
+  {
+    if ( chunkSize < 1 )
+      throw new IllegalArgumentException( "chunkSize must be positive" );
+
+    if ( mapSize < 1 )
+      throw new IllegalArgumentException( "mapSize must be positive" );
+
+    // A literal that can't be in a line, or not as bytes, is of no
+    // use to skip lines
+
+    if ( prefilter != null && ( !prefilter.isLatin1() || prefilter.literal.indexOf( '\n' ) >= 0 ) )
+      prefilter = null;
+
+    this.pattern   = pattern;
+    this.dfa       = dfa;
+    this.prefilter = prefilter;
+    this.pool      = pool;
+    this.chunkSize = chunkSize;
+    this.mapSize   = mapSize;
+  }
+
+  /** Returns the offsets of the first byte of every matching
+   *  line, in increasing order.
+   */
+  public long[] scan( Path file ) throws IOException
+  {
+    try ( FileChannel ch = FileChannel.open( file, StandardOpenOption.READ ) )
+    {
+      long[] bounds = _chunkBounds( ch );
+
+      List<ForkJoinTask<long[]>> tasks = new ArrayList<>();
+      for ( int i = 0; i + 1 < bounds.length; i++ )
+      {
+        final long from = bounds[i];
+        final long to   = bounds[i + 1];
+
+        tasks.add( pool.submit( () -> _scanChunk( ch, from, to ) ) );
+      }
+
+      long[][] found = new long[ tasks.size() ][];
+      int total = 0;
+
+      for ( int i = 0; i < tasks.size(); i++ )
+      {
+        try {
+          found[i] = tasks.get( i ).join();
+        } catch ( UncheckedIOException ex ) {
+          throw ex.getCause();
+        }
+
+        total += found[i].length;
+      }
+
+      long[] offsets = new long[ total ];
+      int n = 0;
+      for ( long[] chunk : found )
+      {
+        System.arraycopy( chunk, 0, offsets, n, chunk.length );
+        n += chunk.length;
+      }
+
+      Metrics.Sink sink = Metrics.sink();
+      if ( sink != null ) sink.scanned( pattern, ch.size(), total );
+
+      return offsets;
+    }
+  }
+
+  /** Cuts the file at the first '\n' after every chunkSize bytes.
+   *  Chunk i is bounds[i] .. bounds[i + 1] - 1.
+   */
+  private long[] _chunkBounds( FileChannel ch ) throws IOException
+  {
+    long size = ch.size();
+    ByteBuffer probe = ByteBuffer.allocate( 4096 );
+
+    List<Long> bounds = new ArrayList<>();
+    bounds.add( 0L );
+
+    long pos = chunkSize;
+    while ( pos < size )
+    {
+      // Look for the end of the line that crosses pos
+
+      long cut = -1;
+      while ( cut < 0 && pos < size )
+      {
+        probe.clear();
+        int n = ch.read( probe, pos );
+        if ( n <= 0 ) break;
+
+        for ( int i = 0; i < n; i++ )
+          if ( probe.get( i ) == '\n' ) { cut = pos + i + 1; break; }
+
+        if ( cut < 0 ) pos += n;
+      }
+
+      if ( cut < 0 || cut >= size ) break;
+
+      bounds.add( cut );
+      pos = cut + chunkSize;
+    }
+
+    bounds.add( size );
+
+    long[] result = new long[ bounds.size() ];
+    for ( int i = 0; i < result.length; i++ ) result[i] = bounds.get( i );
+
+    return result;
+  }
+
+  /** Scans chunk from .. to - 1, mapping it in pieces of at most
+   *  mapSize bytes. A line may run over several pieces.
+   */
+  private long[] _scanChunk( FileChannel ch, long from, long to )
+  {
+    try
+    {
+      if ( prefilter != null && to - from <= mapSize )
+        return _scanChunkForLiteral( ch.map( FileChannel.MapMode.READ_ONLY, from, to - from ), from );
+
+      long[] offsets = new long[16];
+      int    n       = 0;
+
+      long line = from;
+      int  s    = dfa.start();
+
+      for ( long pos = from; pos < to; )
+      {
+        MappedByteBuffer buf = ch.map( FileChannel.MapMode.READ_ONLY, pos, Math.min( mapSize, to - pos ) );
+        int len = buf.limit();
+
+        for ( int i = 0; i < len; i++ )
+        {
+          if ( buf.get( i ) == '\n' )
+          {
+            if ( s != DFA.DEAD && dfa.isFinal( s ) )
+            {
+              if ( n == offsets.length ) offsets = Arrays.copyOf( offsets, 2 * n );
+              offsets[n++] = line;
+            }
+
+            s    = dfa.start();
+            line = pos + i + 1;
+          }
+          else if ( s != DFA.DEAD )
+          {
+            s = dfa.next( s, ( char )( buf.get( i ) & 0xff ) );
+          }
+        }
+
+        pos += len;
+      }
+
+      // The last line of the file has no '\n'
+
+      if ( line < to && s != DFA.DEAD && dfa.isFinal( s ) )
+      {
+        if ( n == offsets.length ) offsets = Arrays.copyOf( offsets, 2 * n );
+        offsets[n++] = line;
+      }
+
+      return Arrays.copyOf( offsets, n );
+    }
+    catch ( IOException ex )
+    {
+      throw new UncheckedIOException( ex );
+    }
+  }
+
+  /** Scans a chunk by jumping to the lines that contain the
+   *  prefilter's literal.
+   */
+  private long[] _scanChunkForLiteral( MappedByteBuffer buf, long from )
+  {
+    long[] offsets = new long[16];
+    int    n       = 0;
+
+    int len = buf.limit();
+
+    for ( int i = 0, hit; i < len && ( hit = prefilter.indexOf( buf, i, len ) ) >= 0; )
+    {
+      int line = hit;
+      while ( line > i && buf.get( line - 1 ) != '\n' ) line--;
+
+      int s   = dfa.start();
+      int eol = line;
+      for ( ; eol < len && buf.get( eol ) != '\n'; eol++ )
+        if ( s != DFA.DEAD ) s = dfa.next( s, ( char )( buf.get( eol ) & 0xff ) );
+
+      if ( s != DFA.DEAD && dfa.isFinal( s ) )
+      {
+        if ( n == offsets.length ) offsets = Arrays.copyOf( offsets, 2 * n );
+        offsets[n++] = from + line;
+      }
+
+      i = eol + 1;
+    }
+
+    return Arrays.copyOf( offsets, n );
+  }
+
+  public static void main( String args[] ) throws IOException
+  {
+    DFA dfa = Regex.compile( "(s|t)*stt" ).dfa();
+
+    Path file = Files.createTempFile( "grep", ".log" );
+    try
+    {
+      // Lines that match and lines that don't, with an empty line
+      // and a last line without its '\n'
+
+      List<Long>    expected = new ArrayList<>();
+      StringBuilder content  = new StringBuilder();
+      Random        random   = new Random( 11 );
+
+      for ( int n = 0; n < 20000; n++ )
+      {
+        StringBuilder line = new StringBuilder();
+        int len = random.nextInt( 12 );
+        for ( int i = 0; i < len; i++ ) line.append( "stx".charAt( random.nextInt( 3 ) ) );
+        if ( random.nextInt( 4 ) == 0 ) line.append( "stt" );
+
+        if ( dfa.simulate( line ) ) expected.add( ( long )content.length() );
+        content.append( line );
+        if ( n < 19999 ) content.append( '\n' );
+      }
+
+      Files.write( file, content.toString().getBytes( StandardCharsets.ISO_8859_1 ) );
+
+      for ( int chunk : new int[]{ 1, 7, 4096, CHUNK_SIZE } )
+      {
+        long[] offsets = new Grep( dfa, ForkJoinPool.commonPool(), chunk ).scan( file );
+
+        assert offsets.length == expected.size() : chunk;
+        for ( int i = 0; i < offsets.length; i++ )
+          assert offsets[i] == expected.get( i ) : chunk;
+      }
+
+      System.out.println( String.format( "Found %d matching lines out of 20000", expected.size() ) );
+
+      // The same scan, jumping from one "stt" to the next
+
+      Regex regex = Regex.compile( "(s|t)*stt" );
+      assert regex.prefilter() != null;
+
+      for ( int chunk : new int[]{ 1, 7, 4096, CHUNK_SIZE } )
+      {
+        long[] offsets = new Grep( regex, ForkJoinPool.commonPool(), chunk ).scan( file );
+
+        assert offsets.length == expected.size() : chunk;
+        for ( int i = 0; i < offsets.length; i++ )
+          assert offsets[i] == expected.get( i ) : chunk;
+      }
+
+      // Chunks larger than a mapping, mapped piece by piece with
+      // lines across pieces
+
+      for ( int map : new int[]{ 64, 1000 } )
+      {
+        long[] offsets = new Grep( regex, ForkJoinPool.commonPool(), 4096, map ).scan( file );
+
+        assert offsets.length == expected.size() : map;
+        for ( int i = 0; i < offsets.length; i++ )
+          assert offsets[i] == expected.get( i ) : map;
+      }
+
+      // A line longer than a mapping, and so than a chunk
+
+      StringBuilder long_line = new StringBuilder();
+      for ( int i = 0; i < 100000; i++ ) long_line.append( "st".charAt( i % 2 ) );
+
+      Files.write( file, ( "x\n" + long_line + "t\nstt\n" + long_line ).getBytes( StandardCharsets.ISO_8859_1 ) );
+
+      for ( int map : new int[]{ 1000, 4096, MAP_SIZE } )
+      {
+        Grep grep = new Grep( regex, ForkJoinPool.commonPool(), 10, map );
+        assert Arrays.equals( grep.scan( file ), new long[]{ 2, 100004 } ) : map;
+      }
+
+      Files.write( file, "stt\n\nstt".getBytes( StandardCharsets.ISO_8859_1 ) );
+      assert Arrays.equals( new Grep( dfa ).scan( file ), new long[]{ 0, 5 } );
+      assert Arrays.equals( new Grep( regex ).scan( file ), new long[]{ 0, 5 } );
+
+      Files.write( file, new byte[0] );
+      assert new Grep( dfa ).scan( file ).length == 0;
+      assert new Grep( Regex.compile( "" ).dfa() ).scan( file ).length == 0;
+    }
+    finally
+    {
+      Files.delete( file );
+    }
+  }
+}
@@ -1,15 +1,38 @@
+package miniregex;
+
 import java.util.*;
 
+/** An input symbol: a Unicode code point, or one of the sentinels
+ *  EPS and NONE, whose values are negative and so never collide
+ *  with a character. The automata keep the bare int values in
+ *  their tables; Input is only what their builders take.
+ *
+ *  The automata read UTF-16, a transition is on one char. A
+ *  supplementary code point is two of them in a row, its high
+ *  and then its low surrogate, which NFA.buildNFABasic() takes
+ *  care of.
+ */
 final class Input
 {
-  public final Character v;
+  static final int EPS_VALUE  = -1;
+  static final int NONE_VALUE = -2;
+
+  public final int v;
 
-  public  Input( char v )      { this.v = v;    }
-  public  Input( Character v ) { this.v = v;    }
-  private Input()              { this.v = null; }
+  public Input( int codePoint )
+  {
+    if ( !Character.isValidCodePoint( codePoint ) )
+      throw new IllegalArgumentException( "Not a code point: " + codePoint );
+
+    this.v = codePoint;
+  }
+
+  private Input( int sentinel, boolean unused ) { this.v = sentinel; }
+
+  public boolean isSupplementary() { return Character.isSupplementaryCodePoint( v ); }
 
   @Override
-  public int hashCode() { return Objects.hashCode( this.v ); }
+  public int hashCode() { return v; }
 
   public boolean equals( Object o )
   {
@@ -18,7 +41,20 @@ final class Input
     if ( getClass() != o.getClass() ) { return false; }
 
     Input in = ( Input )o;
-    return this.v.equals( in.v );
+    return this.v == in.v;
+  }
+
+  @Override
+  public String toString() { return toString( v ); }
+
+  /** Shows an input value as the automata keep it.
+   */
+  static String toString( int v )
+  {
+    if ( v == EPS_VALUE )  return "eps";
+    if ( v == NONE_VALUE ) return "none";
+
+    return "'" + new StringBuilder().appendCodePoint( v ) + "'";
   }
 
   /** Epsilon (eps) transitions are allowed in a NFA. That is,
@@ -32,9 +68,9 @@ final class Input
    *    2. For each state S and input a, there is at most one
    *    edge labeled a leaving S.
    */
-  public static Input EPS  = new Input( '\u03b5' );
+  public static final Input EPS  = new Input( EPS_VALUE, true );
 
-  public static Input NONE = new Input();
+  public static final Input NONE = new Input( NONE_VALUE, true );
 
   public static void main( String args[] )
   {
@@ -57,6 +93,19 @@ final class Input
     if ( !in5.equals( in6 ) ) { System.out.print( "No, in5 and in6 are not equal\n" ); }
     if ( in6.equals( in7 ) )  { System.out.print( "Yes, in6 and in7 are equal\n" );    }
 
+    // The Greek letter epsilon is a character like any other
+
+    assert !new Input( '\u03b5' ).equals( Input.EPS );
+    assert new Input( 0x1f600 ).isSupplementary() && !in5.isSupplementary();
+    assert Input.EPS.toString().equals( "eps" ) && new Input( 0x1f600 ).toString().equals( "'\ud83d\ude00'" );
+
+    try {
+      new Input( -1 );
+      assert false : "-1 is not a code point";
+    } catch ( IllegalArgumentException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
     ///
 
     Map<Map<String, Input>, Integer> map = new HashMap(){{
@@ -0,0 +1,239 @@
+package miniregex;
+
+import java.util.*;
+
+/** A DFA that is built from its NFA while it runs. Each DFA state
+ *  is the set of NFA states the input so far can lead to, exactly
+ *  as in NFA.dfa(), but a state and its transitions are only
+ *  computed the first time the input needs them. Patterns whose
+ *  full subset construction would blow up, e.g. (a|b)*a(a|b){20},
+ *  only pay for the states the input actually visits.
+ *
+ *  The states are cached up to a budget of (estimated) bytes.
+ *  When a new state would not fit, the whole cache is flushed and
+ *  matching goes on from the current state, so memory stays
+ *  bounded whatever the pattern and the input.
+ *
+ *  The cache is mutated by simulate(), a LazyDFA must not be used
+ *  by several threads at once.
+ */
+final class LazyDFA
+{
+  private static final int UNKNOWN = -2;
+
+  /** Rough cost of a cached state besides its bitset and its row
+   *  of transitions: the StateSet, the bitset's header and the
+   *  map entry that numbers it.
+   */
+  private static final int STATE_OVERHEAD = 96;
+
+  private static final int MIN_STATES = 3;
+
+  private final NFA        nfa;
+  private final char[]     alphabet;
+  private final char[]     classmap;
+  private final int        k;
+  private final StateSet[] closures;
+  private final StateSet   startSet;
+  private final int        end;
+  private final long       maxBytes;
+
+  private final Map<StateSet, Integer> _ids = new HashMap<>();
+  private final long[]                 _scratch;
+
+  private StateSet[] _states   = new StateSet[16];
+  private int[]      _transtbl;
+  private int        _count;
+  private long       _bytes;
+
+  private long _flushes;
+  private long _misses;
+
+  LazyDFA( NFA nfa, char[] alphabet, StateSet[] closures, int start, int end, long maxBytes )
+  {
+    this.nfa      = nfa;
+    this.alphabet = alphabet;
+    this.closures = closures;
+    this.startSet = closures[start];
+    this.end      = end;
+    this.maxBytes = maxBytes;
+    this._scratch = new long[ StateSet.words( nfa.count() ) ];
+
+    // As in DFA, the i-th input of the alphabet is class i + 1
+    // and class 0, all DEAD, is for the inputs with no transition
+
+    this.classmap = new char[ alphabet.length == 0 ? 0 : alphabet[ alphabet.length - 1 ] + 1 ];
+    for ( int i = 0; i < alphabet.length; i++ ) classmap[ alphabet[i] ] = ( char )( i + 1 );
+
+    this.k = alphabet.length + 1;
+
+    this._transtbl = new int[ _states.length * k ];
+    _add( startSet );
+  }
+
+  public int  count()   { return _count;   }
+  public long bytes()   { return _bytes;   }
+  public long flushes() { return _flushes; }
+  public long misses()  { return _misses;  }
+
+  private long _cost( StateSet set ) { return STATE_OVERHEAD + 8L * set.bits.length + 4L * k; }
+
+  private int _add( StateSet set )
+  {
+    if ( _count == _states.length )
+    {
+      _states   = Arrays.copyOf( _states, 2 * _count );
+      _transtbl = Arrays.copyOf( _transtbl, 2 * _count * k );
+    }
+
+    int id = _count++;
+    _states[id] = set;
+    _ids.put( set, id );
+    _bytes += _cost( set );
+
+    _transtbl[ id * k ] = DFA.DEAD;
+    Arrays.fill( _transtbl, id * k + 1, ( id + 1 ) * k, UNKNOWN );
+    return id;
+  }
+
+  /** Drops every cached state. The start state always comes back
+   *  as state 0.
+   */
+  private void _flush()
+  {
+    Arrays.fill( _states, 0, _count, null );
+    _ids.clear();
+    _count = 0;
+    _bytes = 0;
+    _flushes++;
+
+    _add( startSet );
+  }
+
+  /** Computes the transition from state s on input class cls and
+   *  caches it. The cache may be flushed on the way, so the caller
+   *  has to continue from the returned state, which is valid in
+   *  the cache as it is after the call.
+   */
+  private int _computeTransition( int s, int cls )
+  {
+    _misses++;
+
+    StateSet from = _states[s];
+    nfa._nextNStates( from, alphabet[ cls - 1 ], closures, _scratch );
+
+    StateSet next_set = new StateSet( _scratch );
+    Arrays.fill( _scratch, 0L );
+
+    if ( next_set.isEmpty() )
+    {
+      _transtbl[ s * k + cls ] = DFA.DEAD;
+      return DFA.DEAD;
+    }
+
+    Integer to = _ids.get( next_set );
+
+    if ( to == null )
+    {
+      if ( _bytes + _cost( next_set ) > maxBytes && _count >= MIN_STATES )
+      {
+        _flush();
+
+        Integer again = _ids.get( from );
+        s = again != null ? again : _add( from );
+        to = _ids.get( next_set );
+      }
+
+      if ( to == null )
+        to = _add( next_set );
+    }
+
+    _transtbl[ s * k + cls ] = to;
+    return to;
+  }
+
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int to )
+  {
+    long misses  = _misses;
+    long flushes = _flushes;
+
+    int s = 0;
+    int i = from;
+
+    for ( ; i < to; i++ )
+    {
+      char c   = in.charAt( i );
+      int  cls = c < classmap.length ? classmap[c] : 0;
+
+      int next = _transtbl[ s * k + cls ];
+      if ( next == UNKNOWN ) next = _computeTransition( s, cls );
+      if ( next == DFA.DEAD ) { s = DFA.DEAD; i++; break; }
+
+      s = next;
+    }
+
+    // Every character read was a hit unless it was a miss
+
+    Metrics.Sink sink = Metrics.sink();
+    if ( sink != null )
+      sink.lazyCache( i - from - ( _misses - misses ), _misses - misses, _flushes - flushes );
+
+    return s != DFA.DEAD && _states[s].contains( end );
+  }
+
+  public void show()
+  {
+    System.out.println( String.format( "This lazy DFA caches %d states in ~%d of %d bytes, flushed %d times after %d misses",
+                                       _count, _bytes, maxBytes, _flushes, _misses ) );
+  }
+
+  public static void main( String args[] )
+  {
+    NFA a = NFA.buildNFABasic( new Input( 'a' ) );
+    NFA b = NFA.buildNFABasic( new Input( 'b' ) );
+    NFA a_OR_b = NFA.buildNFAAlternation( a, b );
+
+    // (a|b)*a(a|b){20}: the 21st character from the end is an 'a'
+
+    NFA hostile = NFA.buildNFAConcatenation( NFA.buildNFAKleeneStar( a_OR_b ), a );
+    for ( int i = 0; i < 20; i++ )
+      hostile = NFA.buildNFAConcatenation( hostile, a_OR_b );
+
+    LazyDFA lazy = hostile.lazyDfa( 64 * 1024 );
+
+    Random random = new Random( 42 );
+    for ( int n = 0; n < 200; n++ )
+    {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt( 2000 );
+      for ( int i = 0; i < len; i++ ) sb.append( random.nextBoolean() ? 'a' : 'b' );
+
+      boolean expected = len >= 21 && sb.charAt( len - 21 ) == 'a';
+      assert lazy.simulate( sb ) == expected : sb;
+      assert lazy.bytes() <= 64 * 1024;
+    }
+
+    lazy.show();
+    assert lazy.flushes() > 0;
+    assert !lazy.simulate( "ac" + "b".repeat( 20 ) );
+
+    // On a tame pattern it agrees with the compiled DFA and
+    // never needs to flush
+
+    NFA s = NFA.buildNFABasic( new Input( 's' ) );
+    NFA t = NFA.buildNFABasic( new Input( 't' ) );
+    NFA stt = NFA.buildNFAConcatenation( NFA.buildNFAConcatenation( s, t ), t );
+    NFA regex = NFA.buildNFAConcatenation( NFA.buildNFAKleeneStar( NFA.buildNFAAlternation( s, t ) ), stt );
+
+    DFA     dfa       = regex.dfa();
+    LazyDFA lazy_tame = regex.lazyDfa( 1 << 20 );
+
+    for ( String in : new String[]{ "", "stt", "sststststtstt", "sttt", "tts", "stx", "ttstt" } )
+      assert dfa.simulate( in ) == lazy_tame.simulate( in ) : in;
+
+    lazy_tame.show();
+    assert lazy_tame.flushes() == 0;
+  }
+}
@@ -0,0 +1,85 @@
+package miniregex;
+
+import java.nio.*;
+
+/** A DFA matching straight out of a file written by DFAFile and
+ *  mapped into memory, see DFAFile.map(). It is the same automaton
+ *  as the DFA that was written, without its tables ever being
+ *  copied to the heap: processes mapping the same file share one
+ *  copy in the page cache.
+ *
+ *  The buffers are only read at absolute positions, a MappedDFA
+ *  can be used by any number of threads at once.
+ */
+final class MappedDFA
+{
+  private final MappedByteBuffer buffer;
+
+  private final CharBuffer classmap;
+  private final LongBuffer finalMarks;
+  private final IntBuffer  transtbl;
+  private final IntBuffer  idOffsets;
+  private final IntBuffer  ids;
+
+  private final int start;
+  private final int count;
+  private final int nclasses;
+  private final int classmapLength;
+
+  MappedDFA( MappedByteBuffer buffer, DFAFile.AdHocLayout layout )
+  {
+    this.buffer         = buffer;
+    this.start          = layout.start;
+    this.count          = layout.count;
+    this.nclasses       = layout.nclasses;
+    this.classmapLength = layout.classmapLength;
+
+    this.classmap   = _slice( layout.classmapAt, 2 * layout.classmapLength ).asCharBuffer();
+    this.finalMarks = _slice( layout.finalsAt, 8 * StateSet.words( count ) ).asLongBuffer();
+    this.transtbl   = _slice( layout.transtblAt, 4 * count * nclasses ).asIntBuffer();
+    this.idOffsets  = layout.hasIds ? _slice( layout.idOffsetsAt, 4 * ( count + 1 ) ).asIntBuffer() : null;
+    this.ids        = layout.hasIds ? _slice( layout.idsAt, 4 * layout.nids ).asIntBuffer() : null;
+  }
+
+  private ByteBuffer _slice( int at, int length ) { return buffer.slice( at, length ).order( ByteOrder.LITTLE_ENDIAN ); }
+
+  public int start()    { return start;    }
+  public int count()    { return count;    }
+  public int nclasses() { return nclasses; }
+
+  public boolean isFinal( int s ) { return ( finalMarks.get( s >>> 6 ) & ( 1L << s ) ) != 0; }
+
+  /** The ids of the patterns state s matches, in a new array.
+   */
+  public int[] matchIds( int s )
+  {
+    if ( idOffsets == null ) return DFA.NO_MATCHES;
+
+    int from = idOffsets.get( s );
+    int[] state_ids = new int[ idOffsets.get( s + 1 ) - from ];
+    ids.get( from, state_ids );
+    return state_ids;
+  }
+
+  public int next( int s, char c )
+  {
+    int cls = c < classmapLength ? classmap.get( c ) : 0;
+    return transtbl.get( s * nclasses + cls );
+  }
+
+  public int walk( int s, CharSequence in, int from, int to )
+  {
+    for ( int i = from; i < to && s != DFA.DEAD; i++ )
+      s = next( s, in.charAt( i ) );
+
+    return s;
+  }
+
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int to )
+  {
+    int s = walk( start, in, from, to );
+    return s != DFA.DEAD && isFinal( s );
+  }
+}
@@ -0,0 +1,263 @@
+package miniregex;
+
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.*;
+
+/** What the engine reports about its work: each compilation with
+ *  its time, NFA and DFA state counts and table size, each scan
+ *  of an input with the number of characters it read and matches
+ *  it found, and the lazy DFA's cache hits, misses and flushes.
+ *
+ *  Nothing is reported until a Sink is installed. The engine reads
+ *  the installed sink once per compilation or scan, never per
+ *  character, so with none installed the cost is a field read and
+ *  a null check per call. Two sinks come with it: Counters, which
+ *  adds everything up, and FLIGHT_RECORDER, which turns the
+ *  reports into JDK Flight Recorder events, e.g. for
+ *
+ *    java -XX:StartFlightRecording:filename=rec.jfr ...
+ *    jfr print --events miniregex.Compile rec.jfr
+ *
+ *  Sinks are called from whatever thread does the work and must be
+ *  thread-safe.
+ */
+final class Metrics
+{
+  /** Receives the engine's reports. pattern is null when the work
+   *  was done on a DFA with no pattern attached.
+   */
+  interface Sink
+  {
+    void compiled( String pattern, int nfaStates, int dfaStates, long tableBytes, long nanos );
+    void scanned( String pattern, long chars, int matches );
+    void lazyCache( long hits, long misses, long flushes );
+
+    /** A sink that reports to this one, then to other.
+     */
+    default Sink and( Sink other )
+    {
+      Sink first = this;
+      return new Sink()
+      {
+        public void compiled( String pattern, int nfaStates, int dfaStates, long tableBytes, long nanos )
+        {
+          first.compiled( pattern, nfaStates, dfaStates, tableBytes, nanos );
+          other.compiled( pattern, nfaStates, dfaStates, tableBytes, nanos );
+        }
+
+        public void scanned( String pattern, long chars, int matches )
+        {
+          first.scanned( pattern, chars, matches );
+          other.scanned( pattern, chars, matches );
+        }
+
+        public void lazyCache( long hits, long misses, long flushes )
+        {
+          first.lazyCache( hits, misses, flushes );
+          other.lazyCache( hits, misses, flushes );
+        }
+      };
+    }
+  }
+
+  /** Totals of every report, across patterns.
+   */
+  static final class Counters implements Sink
+  {
+    final LongAdder compiles     = new LongAdder();
+    final LongAdder compileNanos = new LongAdder();
+    final LongAdder nfaStates    = new LongAdder();
+    final LongAdder dfaStates    = new LongAdder();
+    final LongAdder tableBytes   = new LongAdder();
+    final LongAdder scans        = new LongAdder();
+    final LongAdder matchedScans = new LongAdder();
+    final LongAdder matches      = new LongAdder();
+    final LongAdder chars        = new LongAdder();
+    final LongAdder lazyHits     = new LongAdder();
+    final LongAdder lazyMisses   = new LongAdder();
+    final LongAdder lazyFlushes  = new LongAdder();
+
+    @Override
+    public void compiled( String pattern, int nfaStates, int dfaStates, long tableBytes, long nanos )
+    {
+      this.compiles.increment();
+      this.compileNanos.add( nanos );
+      this.nfaStates.add( nfaStates );
+      this.dfaStates.add( dfaStates );
+      this.tableBytes.add( tableBytes );
+    }
+
+    @Override
+    public void scanned( String pattern, long chars, int matches )
+    {
+      this.scans.increment();
+      this.chars.add( chars );
+      this.matches.add( matches );
+      if ( matches > 0 ) this.matchedScans.increment();
+    }
+
+    @Override
+    public void lazyCache( long hits, long misses, long flushes )
+    {
+      this.lazyHits.add( hits );
+      this.lazyMisses.add( misses );
+      this.lazyFlushes.add( flushes );
+    }
+
+    /** The share of scans that found a match.
+     */
+    public double matchRate()
+    {
+      long n = scans.sum();
+      return n == 0 ? 0 : ( double )matchedScans.sum() / n;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format( "%d compiles in %d us (%d NFA, %d DFA states, %d table bytes), "
+                          + "%d scans of %d chars with %d matches (rate %.2f), lazy cache %d hits, %d misses, %d flushes",
+                            compiles.sum(), compileNanos.sum() / 1000, nfaStates.sum(), dfaStates.sum(), tableBytes.sum(),
+                            scans.sum(), chars.sum(), matches.sum(), matchRate(),
+                            lazyHits.sum(), lazyMisses.sum(), lazyFlushes.sum() );
+    }
+  }
+
+  @Name( "miniregex.Compile" )
+  @Label( "Regex Compilation" )
+  @Category( "Mini Regex" )
+  static final class CompileEvent extends Event
+  {
+    @Label( "Pattern" )    String pattern;
+    @Label( "NFA States" ) int    nfaStates;
+    @Label( "DFA States" ) int    dfaStates;
+
+    @Label( "Table Size" )
+    @DataAmount
+    long tableBytes;
+
+    @Label( "Compile Time" )
+    @Timespan( Timespan.NANOSECONDS )
+    long compileTime;
+  }
+
+  /** One per scan, a lot of them: off unless a recording asks
+   *  for it.
+   */
+  @Name( "miniregex.Scan" )
+  @Label( "Regex Scan" )
+  @Category( "Mini Regex" )
+  @Enabled( false )
+  static final class ScanEvent extends Event
+  {
+    @Label( "Pattern" )    String pattern;
+    @Label( "Characters" ) long   chars;
+    @Label( "Matches" )    int    matches;
+  }
+
+  @Name( "miniregex.LazyCache" )
+  @Label( "Lazy DFA Cache" )
+  @Category( "Mini Regex" )
+  @Enabled( false )
+  static final class LazyCacheEvent extends Event
+  {
+    @Label( "Hits" )    long hits;
+    @Label( "Misses" )  long misses;
+    @Label( "Flushes" ) long flushes;
+  }
+
+  /** Commits a Flight Recorder event per report, for the event
+   *  types the recording has enabled.
+   */
+  static final Sink FLIGHT_RECORDER = new Sink()
+  {
+    public void compiled( String pattern, int nfaStates, int dfaStates, long tableBytes, long nanos )
+    {
+      CompileEvent event = new CompileEvent();
+      if ( !event.isEnabled() ) return;
+
+      event.pattern     = pattern;
+      event.nfaStates   = nfaStates;
+      event.dfaStates   = dfaStates;
+      event.tableBytes  = tableBytes;
+      event.compileTime = nanos;
+      event.commit();
+    }
+
+    public void scanned( String pattern, long chars, int matches )
+    {
+      ScanEvent event = new ScanEvent();
+      if ( !event.isEnabled() ) return;
+
+      event.pattern = pattern;
+      event.chars   = chars;
+      event.matches = matches;
+      event.commit();
+    }
+
+    public void lazyCache( long hits, long misses, long flushes )
+    {
+      LazyCacheEvent event = new LazyCacheEvent();
+      if ( !event.isEnabled() ) return;
+
+      event.hits    = hits;
+      event.misses  = misses;
+      event.flushes = flushes;
+      event.commit();
+    }
+  };
+
+  private static volatile Sink sink;
+
+  private Metrics() {}
+
+  /** Installs the sink that gets the reports from now on, null to
+   *  stop reporting.
+   */
+  public static void install( Sink s ) { sink = s; }
+
+  /** The installed sink, null when there is none.
+   */
+  public static Sink sink() { return sink; }
+
+  public static void main( String args[] )
+  {
+    assert sink() == null;
+
+    Counters counters = new Counters();
+    Counters more     = new Counters();
+    install( counters.and( more ).and( FLIGHT_RECORDER ) );
+    try
+    {
+      Regex regex = Regex.compile( "(s|t)*metrics" );
+
+      assert regex.matches( "stmetrics" ) && !regex.matches( "stmetric" ) && !regex.matches( "xyz" );
+      assert regex.findAll( "metrics smetrics" ).size() == 2;
+
+      NFA     nfa  = Regex.parse( "(a|b)*a(a|b)(a|b)" );
+      LazyDFA lazy = nfa.lazyDfa( 1 << 20 );
+      assert lazy.simulate( "abbaab" ) && lazy.simulate( "abbaab" );
+
+      System.out.println( counters );
+
+      assert counters.compiles.sum() == 1 && counters.dfaStates.sum() == regex.dfa().count();
+      assert counters.nfaStates.sum() > counters.dfaStates.sum() && counters.tableBytes.sum() == regex.dfa().tableBytes();
+
+      assert counters.scans.sum() == 4 && counters.matchedScans.sum() == 2 && counters.matches.sum() == 3;
+      assert counters.chars.sum() == 9 + 8 + 3 + 16;
+      assert counters.matchRate() == 0.5;
+
+      assert counters.lazyHits.sum() + counters.lazyMisses.sum() == 12;
+      assert counters.lazyMisses.sum() == 6 && counters.lazyFlushes.sum() == 0;
+
+      assert more.compiles.sum() == counters.compiles.sum() && more.chars.sum() == counters.chars.sum();
+    }
+    finally
+    {
+      install( null );
+    }
+
+    Regex.compile( "(s|t)*unreported" ).matches( "stunreported" );
+    assert counters.compiles.sum() == 1 && counters.scans.sum() == 4;
+  }
+}
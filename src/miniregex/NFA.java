@@ -0,0 +1,1488 @@
+package miniregex;
+
+import java.util.*;
+
+final class NFA implements Cloneable
+{
+  private class AdHocStack<T>
+  {
+    private T[] _a = (T[]) new Object[1];
+    private int _N = 0;
+
+    boolean isEmpty()  { return _N == 0;   }
+    int     size()     { return _N;        }
+    int     capacity() { return _a.length; }
+
+    private void _resize( int new_sz )
+    {
+      if ( _N > new_sz )
+        throw new RuntimeException( "Illegal new size of stack's internal strorage" );
+
+      T[] buffer = (T[]) new Object[ new_sz ];
+      for ( int i = 0; i < _N; i++ )
+        buffer[i] = _a[i];
+
+      _a = buffer;
+    }
+
+    void push(T ele)
+    {
+      if ( size() == capacity() ) _resize( capacity() * 2 );
+      _a[_N++] = ele;
+    }
+
+    T pop()
+    {
+      T popped = _a[--_N];
+
+      if ( size() > 0 && size() == capacity() / 4 )
+        _resize( capacity() / 2 );
+
+      return popped;
+    }
+  }
+
+  private State start;
+  private State end;
+
+  /** The NFA's transitions are kept as adjacency lists threaded
+   *  through parallel arrays. Edge e leads to state _to[e] on
+   *  input _label[e], a char or Input.EPS_VALUE, and the edges leaving state s are _head[s],
+   *  _next[_head[s]], ... up to NO_EDGE. Thompson's constructions
+   *  never put more than two edges on a state, so the memory is
+   *  linear in the number of states.
+   */
+  private static final int NO_EDGE = -1;
+
+  private int[]   _head;
+  private int[]   _next;
+  private int[]   _to;
+  private int[]   _label;
+
+  private int _nstates;
+  private int _nedges;
+
+  @Override
+  public NFA clone() { return new NFA( this ); }
+
+  public NFA( NFA src )
+  {
+    this._head    = Arrays.copyOf( src._head,  src._nstates );
+    this._next    = Arrays.copyOf( src._next,  src._nedges );
+    this._to      = Arrays.copyOf( src._to,    src._nedges );
+    this._label   = Arrays.copyOf( src._label, src._nedges );
+    this._nstates = src._nstates;
+    this._nedges  = src._nedges;
+
+    this.start    = src.start;
+    this.end      = src.end;
+  }
+
+  /** An NFA over arrays that are already filled in, which it
+   *  keeps, see Builder.
+   */
+  private NFA( int[] head, int[] next, int[] to, int[] label, int nstates, int nedges, int start, int end )
+  {
+    this._head    = head;
+    this._next    = next;
+    this._to      = to;
+    this._label   = label;
+    this._nstates = nstates;
+    this._nedges  = nedges;
+
+    this.start    = new State( start );
+    this.end      = new State( end );
+  }
+
+  public NFA( int size, int start, int end )
+  {
+    assert( _isLegalState( start ) );
+    assert( _isLegalState( end ) );
+
+    this.start    = new State( start );
+    this.end      = new State( end );
+
+    // Initialize the adjacency lists with an "empty graph", no
+    // transitions between its states
+
+    this._head    = new int[ size ];
+    this._next    = new int[ 2 * size ];
+    this._to      = new int[ 2 * size ];
+    this._label   = new int[ 2 * size ];
+    this._nstates = size;
+
+    Arrays.fill( _head, NO_EDGE );
+  }
+
+  public int count() { return _nstates; }
+  private boolean _isLegalState( int s ) { return s >= 0 || s < count(); }
+
+  /** The sorted input symbols the NFA has transitions on.
+   */
+  char[] _alphabet()
+  {
+    char[] alphabet = new char[ _nedges ];
+    int n = 0;
+
+    for ( int s = 0; s < count(); s++ )
+      for ( int e = _head[s]; e != NO_EDGE; e = _next[e] )
+        if ( _label[e] != Input.EPS_VALUE ) alphabet[n++] = ( char )_label[e];
+
+    Arrays.sort( alphabet, 0, n );
+
+    int distinct = 0;
+    for ( int i = 0; i < n; i++ )
+      if ( i == 0 || alphabet[i] != alphabet[i - 1] ) alphabet[distinct++] = alphabet[i];
+
+    return Arrays.copyOf( alphabet, distinct );
+  }
+
+  /** Computes eps-closure({s}) once for every NFA state s, as
+   *  bitsets indexed by state number. Each closure only stores
+   *  the span of states it covers, so a union of many small NFAs
+   *  doesn't cost memory quadratic in its size.
+   */
+  StateSet[] _epsClosures()
+  {
+    StateSet[] closures = new StateSet[ count() ];
+    long[]     scratch  = new long[ StateSet.words( count() ) ];
+    int[]      stack    = new int[ count() ];
+
+    for ( int s = 0; s < count(); s++ )
+    {
+      int top = 0;
+      int lo  = s >>> 6;
+      int hi  = lo + 1;
+
+      StateSet.add( scratch, s );
+      stack[top++] = s;
+
+      while ( top > 0 )
+      {
+        int st = stack[--top];
+
+        for ( int e = _head[st]; e != NO_EDGE; e = _next[e] )
+        {
+          if ( _label[e] != Input.EPS_VALUE || StateSet.contains( scratch, _to[e] ) ) continue;
+
+          StateSet.add( scratch, _to[e] );
+          stack[top++] = _to[e];
+
+          lo = Math.min( lo, _to[e] >>> 6 );
+          hi = Math.max( hi, ( _to[e] >>> 6 ) + 1 );
+        }
+      }
+
+      closures[s] = new StateSet( scratch, lo, hi );
+      Arrays.fill( scratch, lo, hi, 0L );
+    }
+
+    return closures;
+  }
+
+  /** Subset construction over an explicit worklist. The DFA
+   *  states are numbered in the order they are discovered and
+   *  the list of discovered states doubles as the queue: state n
+   *  is expanded once, when the scan reaches it, and each of its
+   *  successors is either looked up or appended with the next
+   *  number. rows.get( n ) receives the successors of state n by
+   *  number, DFA.DEAD where the NFA gets stuck.
+   */
+  private List<StateSet>
+  _subsetConstruction( StateSet start_dstate, char[] alphabet, StateSet[] closures, StateSet restart,
+                       final List<int[]> rows )
+  {
+    if ( rows == null )
+      throw new IllegalArgumentException( "rows must not be null" );
+
+    Map<StateSet, Integer> numbering = new HashMap<>();
+    List<StateSet>         dstates   = new ArrayList<>();
+
+    numbering.put( start_dstate, 0 );
+    dstates.add( start_dstate );
+
+    // One scratch bitset per symbol, of which only the words
+    // lo[sym]..hi[sym] have been written to since last cleared
+
+    long[][] buffers = new long[ alphabet.length ][ StateSet.words( count() ) ];
+    int[]    lo      = new int[ alphabet.length ];
+    int[]    hi      = new int[ alphabet.length ];
+
+    Arrays.fill( lo, Integer.MAX_VALUE );
+
+    for ( int n = 0; n < dstates.size(); n++ )
+    {
+      StateSet cur_dstate = dstates.get( n );
+
+      // Every NFA state of cur_dstate adds, for each of its
+      // labeled transitions, the precomputed eps-closure of the
+      // target to the DFA state reached on that label.
+
+      for ( int cs = cur_dstate.nextSetBit( 0 ); cs >= 0; cs = cur_dstate.nextSetBit( cs + 1 ) )
+      {
+        for ( int e = _head[cs]; e != NO_EDGE; e = _next[e] )
+        {
+          if ( _label[e] == Input.EPS_VALUE ) continue;
+
+          int      sym     = Arrays.binarySearch( alphabet, ( char )_label[e] );
+          StateSet closure = closures[ _to[e] ];
+
+          StateSet.or( buffers[sym], closure );
+          lo[sym] = Math.min( lo[sym], closure.firstWord() );
+          hi[sym] = Math.max( hi[sym], closure.endWord() );
+        }
+      }
+
+      // Searching rather than matching, a run may also start over
+      // at every input: restart joins every successor
+
+      if ( restart != null && !restart.isEmpty() )
+      {
+        for ( int sym = 0; sym < alphabet.length; sym++ )
+        {
+          StateSet.or( buffers[sym], restart );
+          lo[sym] = Math.min( lo[sym], restart.firstWord() );
+          hi[sym] = Math.max( hi[sym], restart.endWord() );
+        }
+      }
+
+      int[] row = new int[ alphabet.length ];
+
+      for ( int sym = 0; sym < alphabet.length; sym++ )
+      {
+        if ( hi[sym] == 0 ) { row[sym] = DFA.DEAD; continue; }
+
+        StateSet next_dstate = new StateSet( buffers[sym], lo[sym], hi[sym] );
+        Arrays.fill( buffers[sym], lo[sym], hi[sym], 0L );
+        lo[sym] = Integer.MAX_VALUE;
+        hi[sym] = 0;
+
+        Integer to = numbering.get( next_dstate );
+        if ( to == null )
+        {
+          to = dstates.size();
+          numbering.put( next_dstate, to );
+          dstates.add( next_dstate );
+        }
+
+        row[sym] = to;
+      }
+
+      rows.add( row );
+    }
+
+    return dstates;
+  }
+
+  public DFA dfa() { return _dfa( null, false ); }
+
+  DFA _dfa( int[] ends ) { return _dfa( ends, false ); }
+
+  /** Builds the minimal DFA. When ends is given, ends[i] is the
+   *  final state of the i-th pattern of a union built by
+   *  buildNFAUnion, and each DFA state records the patterns whose
+   *  final state it contains.
+   *
+   *  An unanchored DFA recognizes the inputs that have a suffix
+   *  in the NFA's language, as if the NFA started with .*: each
+   *  DFA state also holds the initial state's closure, so no
+   *  input on the alphabet leads to DEAD. The characters off the
+   *  alphabet still do, and a caller walking it has to read DEAD
+   *  as the start state.
+   */
+  DFA _dfa( int[] ends, boolean unanchored )
+  {
+    // It starts by creating the initial state for the DFA. Since
+    // an initial state is really the NFA's initial state plus
+    // all the states reachable by *eps* transitions from it. The
+    // DFA initial state is the eps-closure of the NFA's initial
+    // state.
+
+    char[]     alphabet = _alphabet();
+    StateSet[] closures = _epsClosures();
+
+    StateSet dfa_start_state = closures[ start.n() ];
+
+    List<int[]>    rows    = new ArrayList<>();
+    List<StateSet> dstates = _subsetConstruction( dfa_start_state, alphabet, closures,
+                                                  unanchored ? dfa_start_state : null, rows );
+
+    DFA dfa = new DFA( dstates.size(), alphabet );
+
+    int[] pattern_of = null;
+    if ( ends != null )
+    {
+      pattern_of = new int[ count() ];
+      Arrays.fill( pattern_of, -1 );
+      for ( int i = 0; i < ends.length; i++ ) pattern_of[ ends[i] ] = i;
+    }
+
+    for ( int from = 0; from < dstates.size(); from++ )
+    {
+      StateSet dstate = dstates.get( from );
+
+      if ( dstate.contains( this.end.n() ) )
+        dfa.addFinalMark( from );
+
+      if ( pattern_of != null && dstate.contains( this.end.n() ) )
+      {
+        int[] ids = new int[ ends.length ];
+        int   nids = 0;
+
+        for ( int st = dstate.nextSetBit( 0 ); st >= 0; st = dstate.nextSetBit( st + 1 ) )
+          if ( pattern_of[st] >= 0 ) ids[nids++] = pattern_of[st];
+
+        ids = Arrays.copyOf( ids, nids );
+        Arrays.sort( ids );
+        dfa.setMatchIds( from, ids );
+      }
+
+      int[] row = rows.get( from );
+      for ( int sym = 0; sym < alphabet.length; sym++ )
+        if ( row[sym] != DFA.DEAD )
+          dfa.addTransition( from, row[sym], new Input( alphabet[sym] ) );
+    }
+    return dfa.minimized();
+  }
+
+  /** Returns a LazyDFA for this NFA, whose cache of DFA states
+   *  is kept under about maxBytes. The LazyDFA works on a copy,
+   *  later changes to this NFA don't affect it.
+   */
+  public LazyDFA lazyDfa( long maxBytes )
+  {
+    NFA nfa = this.clone();
+    return new LazyDFA( nfa, nfa._alphabet(), nfa._epsClosures(), nfa.start.n(), nfa.end.n(), maxBytes );
+  }
+
+  /** Returns a PikeVM that matches by simulating this NFA, with
+   *  no compilation step. It works on a copy of the transitions.
+   */
+  public PikeVM pikeVM()
+  {
+    return new PikeVM( Arrays.copyOf( _head, _nstates ), Arrays.copyOf( _next, _nedges ),
+                       Arrays.copyOf( _to, _nedges ), Arrays.copyOf( _label, _nedges ), start.n(), end.n() );
+  }
+
+  /** Returns the NFA of the same language over UTF-8 bytes: every
+   *  transition on a character becomes a chain of transitions on
+   *  the bytes of its encoding, byte b being the input b. A high
+   *  surrogate and the low surrogates that can follow it make
+   *  one chain of four bytes, the code point they stand for; lone
+   *  surrogates have no encoding and their transitions go away.
+   */
+  public NFA utf8()
+  {
+    StateSet[] closures = _epsClosures();
+
+    // The chains first, to know how many states they add: chain
+    // k runs from chain_from[k] to chain_to[k] on the bytes of
+    // code point chain_cp[k]
+
+    int[] chain_from = new int[ _nedges ];
+    int[] chain_to   = new int[ _nedges ];
+    int[] chain_cp   = new int[ _nedges ];
+    int   nchains    = 0;
+    int   added      = 0;
+
+    for ( int from = 0; from < count(); from++ )
+    {
+      for ( int e = _head[from]; e != NO_EDGE; e = _next[e] )
+      {
+        int label = _label[e];
+        if ( label == Input.EPS_VALUE || Character.isLowSurrogate( ( char )label ) ) continue;
+
+        StateSet after = Character.isHighSurrogate( ( char )label ) ? closures[ _to[e] ] : null;
+        int      nlows = 0;
+
+        if ( after != null )
+          for ( int st = after.nextSetBit( 0 ); st >= 0; st = after.nextSetBit( st + 1 ) )
+            for ( int f = _head[st]; f != NO_EDGE; f = _next[f] )
+              if ( Character.isLowSurrogate( ( char )_label[f] ) ) nlows++;
+
+        if ( nchains + nlows + 1 > chain_cp.length )
+        {
+          int new_sz = 2 * ( nchains + nlows + 1 );
+
+          chain_from = Arrays.copyOf( chain_from, new_sz );
+          chain_to   = Arrays.copyOf( chain_to,   new_sz );
+          chain_cp   = Arrays.copyOf( chain_cp,   new_sz );
+        }
+
+        if ( after == null )
+        {
+          chain_from[nchains] = from;
+          chain_to[nchains]   = _to[e];
+          chain_cp[nchains]   = label;
+          added += _utf8Length( label ) - 1;
+          nchains++;
+          continue;
+        }
+
+        for ( int st = after.nextSetBit( 0 ); st >= 0; st = after.nextSetBit( st + 1 ) )
+        {
+          for ( int f = _head[st]; f != NO_EDGE; f = _next[f] )
+          {
+            if ( !Character.isLowSurrogate( ( char )_label[f] ) ) continue;
+
+            chain_from[nchains] = from;
+            chain_to[nchains]   = _to[f];
+            chain_cp[nchains]   = Character.toCodePoint( ( char )label, ( char )_label[f] );
+            added += 3;
+            nchains++;
+          }
+        }
+      }
+    }
+
+    NFA    bytes = new NFA( count() + added, start.n(), end.n() );
+    int    fresh = count();
+    byte[] code  = new byte[4];
+
+    for ( int from = 0; from < count(); from++ )
+      for ( int e = _head[from]; e != NO_EDGE; e = _next[e] )
+        if ( _label[e] == Input.EPS_VALUE ) bytes._addTransition( from, _to[e], Input.EPS_VALUE );
+
+    for ( int k = 0; k < nchains; k++ )
+    {
+      int n = _utf8Encode( chain_cp[k], code );
+
+      int at = chain_from[k];
+      for ( int i = 0; i < n; i++ )
+      {
+        int to = i == n - 1 ? chain_to[k] : fresh++;
+        bytes._addTransition( at, to, code[i] & 0xff );
+        at = to;
+      }
+    }
+
+    return bytes;
+  }
+
+  private static int _utf8Length( int cp ) { return cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4; }
+
+  /** Writes the UTF-8 encoding of code point cp into code, and
+   *  returns its length.
+   */
+  private static int _utf8Encode( int cp, byte[] code )
+  {
+    switch ( _utf8Length( cp ) )
+    {
+      case 1:
+        code[0] = ( byte )cp;
+        return 1;
+
+      case 2:
+        code[0] = ( byte )( 0xc0 | cp >>> 6 );
+        code[1] = ( byte )( 0x80 | cp & 0x3f );
+        return 2;
+
+      case 3:
+        code[0] = ( byte )( 0xe0 | cp >>> 12 );
+        code[1] = ( byte )( 0x80 | cp >>> 6 & 0x3f );
+        code[2] = ( byte )( 0x80 | cp & 0x3f );
+        return 3;
+
+      default:
+        code[0] = ( byte )( 0xf0 | cp >>> 18 );
+        code[1] = ( byte )( 0x80 | cp >>> 12 & 0x3f );
+        code[2] = ( byte )( 0x80 | cp >>> 6 & 0x3f );
+        code[3] = ( byte )( 0x80 | cp & 0x3f );
+        return 4;
+    }
+  }
+
+  /** Returns the NFA of the reversed language: every transition
+   *  turned around, and the initial and final states swapped.
+   */
+  public NFA reversed()
+  {
+    NFA rev = new NFA( count(), end.n(), start.n() );
+
+    for ( int from = 0; from < count(); from++ )
+      for ( int e = _head[from]; e != NO_EDGE; e = _next[e] )
+        rev._addTransition( _to[e], from, _label[e] );
+
+    return rev;
+  }
+
+  public void addTransition( State from, State to, Input in ) { addTransition( from.n(), to.n(), in ); }
+  public void addTransition( State from, int   to, Input in ) { addTransition( from.n(), to,     in ); }
+  public void addTransition( int   from, State to, Input in ) { addTransition( from,     to.n(), in ); }
+  public void addTransition( int   from, int   to, Input in )
+  {
+    if ( in.isSupplementary() )
+      throw new IllegalArgumentException( "Input " + in + " takes two transitions, one per surrogate, see buildNFABasic()" );
+
+    _addTransition( from, to, in.v );
+  }
+
+  /** addTransition() on an input value as the NFA keeps it: a
+   *  char, EPS_VALUE or NONE_VALUE.
+   */
+  private void _addTransition( int from, int to, int in )
+  {
+    assert( _isLegalState( from ) );
+    assert( _isLegalState( to ) );
+
+    // There is at most one transition between two states, a new
+    // input replaces the old one and NONE removes it.
+
+    int prev = NO_EDGE;
+    for ( int e = _head[from]; e != NO_EDGE; prev = e, e = _next[e] )
+    {
+      if ( _to[e] != to ) continue;
+
+      if      ( in != Input.NONE_VALUE ) { _label[e] = in;          }
+      else if ( prev == NO_EDGE )        { _head[from] = _next[e]; }
+      else                               { _next[prev] = _next[e]; }
+
+      return;
+    }
+
+    if ( in == Input.NONE_VALUE ) return;
+
+    int e = _newEdge( to, in );
+
+    if ( prev == NO_EDGE ) { _head[from] = e; }
+    else                   { _next[prev] = e; }
+  }
+
+  /** Allocates a new edge to state to on input in, which is not
+   *  linked to any state yet.
+   */
+  private int _newEdge( int to, int in )
+  {
+    if ( _nedges == _to.length )
+    {
+      int new_sz = 2 * _nedges + 2;
+
+      _next  = Arrays.copyOf( _next,  new_sz );
+      _to    = Arrays.copyOf( _to,    new_sz );
+      _label = Arrays.copyOf( _label, new_sz );
+    }
+
+    int e = _nedges++;
+    _next[e]  = NO_EDGE;
+    _to[e]    = to;
+    _label[e] = in;
+
+    return e;
+  }
+
+  public void show()
+  {
+    System.out.println( String.format( "This NFA got %d states: s0 - s%d", count(), count() - 1 ) );
+    System.out.println( String.format( "The initial state is " + start ) );
+    System.out.println( String.format( "The final state is " + end ) );
+
+    for ( int from = 0; from < count(); from++ )
+    {
+      for ( int e = _head[from]; e != NO_EDGE; e = _next[e] )
+      {
+        System.out.print( String.format( "Transitions from s%d to s%d on input ", from, _to[e] ) );
+        System.out.println( Input.toString( _label[e] ) );
+      }
+    }
+  }
+
+  /** Appends a new, empty state to the NFA.
+   */
+  private void _appendEmptyState()
+  {
+    if ( _nstates == _head.length )
+      _head = Arrays.copyOf( _head, 2 * _nstates + 1 );
+
+    _head[_nstates++] = NO_EDGE;
+
+    this.end = new State( this.end.n() + 1 );
+  }
+
+  /** Renames all the NFA's states:
+   *
+   *  For each NFA state: number += shift. Functionally, this
+   *  doesn't affect the NFA, it only makes it larger and renames
+   *  its states.
+   */
+  private void _shiftStates( int shift )
+  {
+    if ( shift < 1 ) { return; }
+
+    int[] shifted_head = new int[ _nstates + shift ];
+    Arrays.fill( shifted_head, 0, shift, NO_EDGE );
+    System.arraycopy( _head, 0, shifted_head, shift, _nstates );
+
+    _head     = shifted_head;
+    _nstates += shift;
+
+    for ( int e = 0; e < _nedges; e++ ) { _to[e] += shift; }
+
+    this.start = new State( this.start.n() + shift );
+    this.end   = new State( this.end.n() + shift );
+  }
+
+  /** Fills states 0 up to src.count() with src's states.
+   */
+  private void _fillStates( NFA nfa )
+  {
+    NFA src = nfa == this ? nfa.clone() : nfa;
+    NFA dst = this;
+    int srcsz = src.count();
+
+    for ( int i = 0; i < srcsz; i++ )
+    {
+      // The transitions among states 0 up to srcsz are src's,
+      // whatever dst had there goes away. Transitions to states
+      // beyond srcsz are dst's own and stay.
+
+      int prev = NO_EDGE;
+      for ( int e = dst._head[i]; e != NO_EDGE; e = dst._next[e] )
+      {
+        if      ( dst._to[e] >= srcsz ) { prev = e;                        }
+        else if ( prev == NO_EDGE )     { dst._head[i] = dst._next[e];     }
+        else                            { dst._next[prev] = dst._next[e];  }
+      }
+
+      for ( int e = src._head[i]; e != NO_EDGE; e = src._next[e] )
+        dst._addTransition( i, src._to[e], src._label[e] );
+    }
+  }
+
+  public void dumpInternalTranstbl()
+  {
+    System.out.println( "====================" );
+    System.out.println( "Initial State: " + start );
+    System.out.println( "  Final State: " + end );
+    System.out.println( "--------------------" );
+    System.out.println();
+
+    for ( int i = 0; i < count(); i++ )
+    {
+      System.out.print( String.format( "%4d ->", i ) );
+
+      for ( int e = _head[i]; e != NO_EDGE; e = _next[e] )
+        System.out.print( String.format( " %d %s", _to[e], Input.toString( _label[e] ) ) );
+
+      System.out.println();
+    }
+
+    System.out.println();
+  }
+
+  public static NFA buildNFAAlternation( NFA n1, NFA n2 )
+  {
+    NFA nfa1 = n1.clone();
+    NFA nfa2 = n2.clone();
+
+    //        +-----------------+
+    //        | .-.         .-. |
+    //     +-->(   )  N(s) (   )+--+
+    //     |  | `-'         `-' |  |
+    //     |  +-----------------+  |
+    //     |                       v
+    //    .-.                    +---+
+    //   ( S )                   | F |
+    //    `-'                    +---+
+    //     |  +-----------------+  ^
+    //     |  | .-.         .-. |  |
+    //     +--|(   )  N(t) (   )|--+
+    //        | `-'         `-' |
+    //        +-----------------+
+    //
+    // The new nfaUnion contain all the states in nfa1 and nfa2,
+    // plus a new initial and final states.  First will come the
+    // new initial state, then nfa1's states, then nfa2's states,
+    // then the new final state.
+
+    nfa1._shiftStates( 1 );            // make room for the new initial state
+    nfa2._shiftStates( nfa1.count() ); // make room for nfa1's states
+
+    NFA nfaUnion = new NFA( nfa2 );   // create a new nfa and initialize it
+    nfaUnion._fillStates( nfa1 );      // nfa1's states take their places in the new nfa
+
+    nfaUnion.addTransition( 0, nfa1.start, Input.EPS );
+    nfaUnion.addTransition( 0, nfa2.start, Input.EPS );
+    nfaUnion.start = State.ZERO;
+
+    nfaUnion._appendEmptyState();
+    nfaUnion.end = new State( nfaUnion.count() - 1 );
+
+    nfaUnion.addTransition( nfa1.end, nfaUnion.end, Input.EPS );
+    nfaUnion.addTransition( nfa2.end, nfaUnion.end, Input.EPS );
+
+    return nfaUnion;
+  }
+
+  public static NFA buildNFAConcatenation( NFA n1, NFA n2 )
+  {
+    NFA nfa1 = n1.clone();
+    NFA nfa2 = n2.clone();
+
+    // Make room for nfa1's states.  First will come nfa1, then
+    // nfa2 (nfa2's initial state would be overlapped with nfa1's
+    // final state
+    //
+    nfa2._shiftStates( nfa1.count() - 1 );
+
+    NFA nfaConcat = new NFA( nfa2 );
+
+    // nfa1's states take their places in nfaConcat NOTE: nfa1's
+    // final state overwrites nfa2's initial state, thus we get
+    // the desired merge automagically (the transition from
+    // nfa2's initial state now transits from nfa1's final state)
+    // 
+    nfaConcat._fillStates( nfa1 );
+
+    // Set the new initial state (the final state stays nfa2's
+    // final state, and was already copied)
+    //
+    nfaConcat.start = nfa1.start;
+
+    return nfaConcat;
+  }
+
+  public static NFA buildNFAKleeneStar( NFA n )
+  {
+    NFA nfa = n.clone();
+
+    nfa._shiftStates( 1 );
+
+    NFA nfaKleeneStar = new NFA( nfa );
+    nfaKleeneStar._fillStates( nfa );
+    nfaKleeneStar._appendEmptyState();
+
+    nfaKleeneStar.start = State.ZERO;
+    nfaKleeneStar.end = new State( nfaKleeneStar.count() - 1 );
+
+    nfaKleeneStar.addTransition( 0, nfa.start, Input.EPS );
+    nfaKleeneStar.addTransition( 0, nfaKleeneStar.end, Input.EPS );
+    nfaKleeneStar.addTransition( nfa.end, nfa.start, Input.EPS );
+    nfaKleeneStar.addTransition( nfa.end, nfaKleeneStar.end, Input.EPS );
+
+    return nfaKleeneStar;
+  }
+
+  /** Builds the union of many NFAs in a single pass, without the
+   *  pairwise copies a chain of buildNFAAlternation would make:
+   *
+   *    a new initial state, then each NFA's states in turn, then
+   *    a new final state; *eps* transitions lead from the initial
+   *    state to every NFA's initial state, and from every NFA's
+   *    final state to the final state.
+   *
+   *  When ends is given, ends[i] receives the state that the final
+   *  state of nfas[i] became.
+   */
+  public static NFA buildNFAUnion( NFA[] nfas, int[] ends )
+  {
+    int size = 2;
+    for ( NFA nfa : nfas ) size += nfa.count();
+
+    NFA union = new NFA( size, 0, size - 1 );
+    int shift = 1;
+
+    for ( int i = 0; i < nfas.length; i++ )
+    {
+      NFA nfa = nfas[i];
+
+      for ( int from = 0; from < nfa.count(); from++ )
+        for ( int e = nfa._head[from]; e != NO_EDGE; e = nfa._next[e] )
+          union._addTransition( shift + from, shift + nfa._to[e], nfa._label[e] );
+
+      // The initial state's edges are all distinct, they are
+      // prepended rather than looked up one by one
+
+      int e = union._newEdge( shift + nfa.start.n(), Input.EPS_VALUE );
+      union._next[e] = union._head[0];
+      union._head[0] = e;
+
+      union.addTransition( shift + nfa.end.n(), union.end, Input.EPS );
+
+      if ( ends != null ) ends[i] = shift + nfa.end.n();
+      shift += nfa.count();
+    }
+
+    return union;
+  }
+
+  /** The NFA of a single input. A supplementary code point reads
+   *  as its two surrogates, one after the other.
+   */
+  public static NFA buildNFABasic( Input in )
+  {
+    if ( in.isSupplementary() )
+    {
+      NFA nfa = new NFA( 3, 0, 2 );
+      nfa._addTransition( 0, 1, Character.highSurrogate( in.v ) );
+      nfa._addTransition( 1, 2, Character.lowSurrogate( in.v ) );
+      return nfa;
+    }
+
+    NFA nfa = new NFA( 2, 0, 1 );
+    nfa.addTransition( 0, 1, in );
+    return nfa;
+  }
+
+  /** Builds an NFA out of fragments the way Thompson's original
+   *  construction does, without the copies of the buildNFA*
+   *  combinators: every state and edge goes straight into the
+   *  arrays of the NFA to be, and is never moved.
+   *
+   *  A fragment is a start state and a list of dangling edges,
+   *  edges whose target isn't known yet. The list is threaded
+   *  through the _to of its own edges, and composing fragments
+   *  links lists or patches their edges to a state, in constant
+   *  time:
+   *
+   *    xy   x's dangling edges go to y's start
+   *    x|y  a new state with eps-edges to x and y, dangling x's
+   *         and y's edges
+   *    x*   a new state with an eps-edge to x and a dangling one,
+   *         x's dangling edges go back to it
+   *
+   *  build() patches the last fragment's edges to a new final
+   *  state, so a pattern is built in one pass, in time linear in
+   *  its length. A fragment is used up once composed, and the
+   *  builder once built.
+   */
+  static final class Builder implements Regex.Combinators<NFA.Builder.Fragment>
+  {
+    /** A start state and its dangling edges, out to tail.
+     */
+    static final class Fragment
+    {
+      final int start;
+      final int out;
+      final int tail;
+
+      private Fragment( int start, int out, int tail )
+      {
+        this.start = start;
+        this.out   = out;
+        this.tail  = tail;
+      }
+    }
+
+    private int[] _head  = new int[16];
+    private int[] _next  = new int[32];
+    private int[] _to    = new int[32];
+    private int[] _label = new int[32];
+
+    private int _nstates;
+    private int _nedges;
+
+    private int _newState()
+    {
+      _checkNotBuilt();
+      if ( _nstates == _head.length ) _head = Arrays.copyOf( _head, 2 * _nstates );
+
+      _head[_nstates] = NO_EDGE;
+      return _nstates++;
+    }
+
+    /** Adds an edge from state from on input in, dangling: the
+     *  end of a list of dangling edges.
+     */
+    private int _newEdge( int from, int in )
+    {
+      if ( _nedges == _to.length )
+      {
+        int new_sz = 2 * _nedges;
+
+        _next  = Arrays.copyOf( _next,  new_sz );
+        _to    = Arrays.copyOf( _to,    new_sz );
+        _label = Arrays.copyOf( _label, new_sz );
+      }
+
+      int e = _nedges++;
+      _label[e]  = in;
+      _to[e]     = NO_EDGE;
+      _next[e]   = _head[from];
+      _head[from] = e;
+      return e;
+    }
+
+    private int _newEdge( int from, int to, int in )
+    {
+      int e = _newEdge( from, in );
+      _to[e] = to;
+      return e;
+    }
+
+    private void _checkNotBuilt()
+    {
+      if ( _head == null ) throw new IllegalStateException( "the NFA is already built" );
+    }
+
+    /** Points every dangling edge from out on to state to.
+     */
+    private void _patch( int out, int to )
+    {
+      _checkNotBuilt();
+      for ( int e = out, next; e != NO_EDGE; e = next )
+      {
+        next  = _to[e];
+        _to[e] = to;
+      }
+    }
+
+    /** Links the lists x and y, the tail of x going on to y.
+     */
+    private int _append( Fragment x, Fragment y, int[] tail )
+    {
+      if ( x.out == NO_EDGE ) { tail[0] = y.tail; return y.out; }
+      if ( y.out == NO_EDGE ) { tail[0] = x.tail; return x.out; }
+
+      _to[ x.tail ] = y.out;
+      tail[0] = y.tail;
+      return x.out;
+    }
+
+    public Fragment symbol( Input in )
+    {
+      if ( in == Input.EPS )  return empty();
+      if ( in == Input.NONE ) throw new IllegalArgumentException( "NONE is no input" );
+
+      if ( in.isSupplementary() )
+      {
+        int s = _newState();
+        int t = _newState();
+        _newEdge( s, t, Character.highSurrogate( in.v ) );
+
+        int e = _newEdge( t, Character.lowSurrogate( in.v ) );
+        return new Fragment( s, e, e );
+      }
+
+      int s = _newState();
+      int e = _newEdge( s, in.v );
+      return new Fragment( s, e, e );
+    }
+
+    /** The fragment that matches the empty string.
+     */
+    public Fragment empty()
+    {
+      int s = _newState();
+      int e = _newEdge( s, Input.EPS_VALUE );
+      return new Fragment( s, e, e );
+    }
+
+    public Fragment concatenation( Fragment x, Fragment y )
+    {
+      _patch( x.out, y.start );
+      return new Fragment( x.start, y.out, y.tail );
+    }
+
+    public Fragment alternation( Fragment x, Fragment y )
+    {
+      int s = _newState();
+      _newEdge( s, x.start, Input.EPS_VALUE );
+      _newEdge( s, y.start, Input.EPS_VALUE );
+
+      int[] tail = new int[1];
+      int   out  = _append( x, y, tail );
+      return new Fragment( s, out, tail[0] );
+    }
+
+    public Fragment kleeneStar( Fragment x )
+    {
+      int s = _newState();
+      _newEdge( s, x.start, Input.EPS_VALUE );
+      _patch( x.out, s );
+
+      int e = _newEdge( s, Input.EPS_VALUE );
+      return new Fragment( s, e, e );
+    }
+
+    /** x+, with x once: its dangling edges loop back through a new
+     *  state that may also leave.
+     */
+    public Fragment plus( Fragment x )
+    {
+      int s = _newState();
+      _newEdge( s, x.start, Input.EPS_VALUE );
+      _patch( x.out, s );
+
+      int e = _newEdge( s, Input.EPS_VALUE );
+      return new Fragment( x.start, e, e );
+    }
+
+    public Fragment optional( Fragment x )
+    {
+      int s = _newState();
+      _newEdge( s, x.start, Input.EPS_VALUE );
+
+      int e = _newEdge( s, Input.EPS_VALUE );
+      _to[e] = x.out;
+      return new Fragment( s, e, x.out == NO_EDGE ? e : x.tail );
+    }
+
+    /** The NFA from the fragment's start to a new final state,
+     *  over the builder's arrays.
+     */
+    public NFA build( Fragment x )
+    {
+      int end = _newState();
+      _patch( x.out, end );
+
+      NFA nfa = new NFA( _head, _next, _to, _label, _nstates, _nedges, x.start, end );
+      _head = _next = _to = _label = null;
+      return nfa;
+    }
+  }
+
+  /** Returns the literals every match contains, in the order they
+   *  appear in it. The first one is the prefix every match starts
+   *  with, empty when there is none.
+   *
+   *  They are read off the dominators of the final state, the
+   *  states every path from the initial state to the final one
+   *  goes through, found with the iterative algorithm of Cooper,
+   *  Harvey and Kennedy. A path goes through them in order, and
+   *  where one of them has a single transition, to the next one,
+   *  the path reads its input right there: a run of those spells
+   *  a literal, *eps* transitions adding nothing to it.
+   */
+  List<String> _requiredLiterals()
+  {
+    final int n = count();
+
+    // Number the states reachable from the initial state in
+    // reverse postorder, with an explicit DFS stack
+
+    int[] rpo   = new int[n];
+    int[] order = new int[n];
+    int[] stack = new int[n];
+    int[] edge  = new int[n];
+    int   nreached = 0;
+
+    Arrays.fill( rpo, -1 );
+
+    int top = 0;
+    stack[top++] = start.n();
+    edge[ start.n() ] = _head[ start.n() ];
+    rpo[ start.n() ] = n; // visited, numbered when done
+
+    int[] postorder = new int[n];
+
+    while ( top > 0 )
+    {
+      int st = stack[ top - 1 ];
+      int e  = edge[st];
+
+      if ( e == NO_EDGE )
+      {
+        postorder[ nreached++ ] = st;
+        top--;
+        continue;
+      }
+
+      edge[st] = _next[e];
+
+      int to = _to[e];
+      if ( rpo[to] != -1 ) continue;
+
+      rpo[to]  = n;
+      edge[to] = _head[to];
+      stack[top++] = to;
+    }
+
+    for ( int i = 0; i < nreached; i++ )
+    {
+      order[i] = postorder[ nreached - 1 - i ];
+      rpo[ order[i] ] = i;
+    }
+
+    List<String> literals = new ArrayList<>();
+    literals.add( "" );
+
+    if ( rpo[ end.n() ] < 0 ) return literals;
+
+    // Predecessors among the reachable states
+
+    int[] pred_at = new int[ n + 1 ];
+    for ( int from = 0; from < n; from++ )
+      if ( rpo[from] >= 0 )
+        for ( int e = _head[from]; e != NO_EDGE; e = _next[e] ) pred_at[ _to[e] + 1 ]++;
+
+    for ( int i = 0; i < n; i++ ) pred_at[ i + 1 ] += pred_at[i];
+
+    int[] preds = new int[ pred_at[n] ];
+    int[] fill  = Arrays.copyOf( pred_at, n );
+    for ( int from = 0; from < n; from++ )
+      if ( rpo[from] >= 0 )
+        for ( int e = _head[from]; e != NO_EDGE; e = _next[e] ) preds[ fill[ _to[e] ]++ ] = from;
+
+    // idom[] by rpo number
+
+    int[] idom = new int[ nreached ];
+    Arrays.fill( idom, -1 );
+    idom[0] = 0;
+
+    for ( boolean changed = true; changed; )
+    {
+      changed = false;
+
+      for ( int b = 1; b < nreached; b++ )
+      {
+        int st       = order[b];
+        int new_idom = -1;
+
+        for ( int i = pred_at[st]; i < pred_at[ st + 1 ]; i++ )
+        {
+          int p = rpo[ preds[i] ];
+          if ( idom[p] < 0 ) continue;
+
+          if ( new_idom < 0 ) { new_idom = p; continue; }
+
+          int x = p, y = new_idom;
+          while ( x != y )
+          {
+            while ( x > y ) x = idom[x];
+            while ( y > x ) y = idom[y];
+          }
+          new_idom = x;
+        }
+
+        if ( idom[b] != new_idom ) { idom[b] = new_idom; changed = true; }
+      }
+    }
+
+    // The dominators of the final state, from the initial state on
+
+    List<Integer> chain = new ArrayList<>();
+    for ( int b = rpo[ end.n() ]; ; b = idom[b] )
+    {
+      chain.add( order[b] );
+      if ( b == 0 ) break;
+    }
+    Collections.reverse( chain );
+
+    StringBuilder literal = new StringBuilder();
+    boolean       prefix  = true;
+
+    for ( int i = 0; i + 1 < chain.size(); i++ )
+    {
+      int st = chain.get( i );
+      int e  = _head[st];
+
+      if ( e != NO_EDGE && _next[e] == NO_EDGE && _to[e] == chain.get( i + 1 ) )
+      {
+        if ( _label[e] != Input.EPS_VALUE ) literal.append( ( char )_label[e] );
+        continue;
+      }
+
+      if ( prefix ) literals.set( 0, literal.toString() );
+      else if ( literal.length() > 0 ) literals.add( literal.toString() );
+
+      literal.setLength( 0 );
+      prefix = false;
+    }
+
+    if ( prefix ) literals.set( 0, literal.toString() );
+    else if ( literal.length() > 0 ) literals.add( literal.toString() );
+
+    return literals;
+  }
+
+  /** Given N - an NFA and T - a set of NFA states, we would like
+   *  to know which states in N are reachable from states T by
+   *  *eps* transitions. eps-closure is an algorithm that answers
+   *  this question.
+   *
+   *  inputs: T - set of NFA states
+   *  output: eps-closure(T) - states reachable from T by eps transitions
+   */
+  public Set<State> _epsClosure( Set<State> T )
+  {
+    // This algorithm iteratively finds all the states reachable
+    // by *eps* transitions from the states T. First, the states
+    // T themselves are added to the output. Then, one by one the
+    // states are checked for *eps* transitions, and the states
+    // these transitions lead to are also added to the output,
+    // and are pushed onto the stack (in order to be checked for
+    // *eps* transitions).
+    //
+    // The process proceeds iteratively, until no more states can be
+    // reached with *eps* transitions only. For instance, for the
+    // (s|t)*stt NFA above, eps-closure({0}) = {0, 1, 2, 4, 7},
+    // eps-closure({8, 9}) = {8, 9}, etc..
+
+    Set<State> closure = new HashSet<>();
+    if ( T.isEmpty() ) return closure;
+
+    AdHocStack<State> stack = new AdHocStack<>();
+
+    for ( State st : T )
+    {
+      stack.push( st );
+
+      while ( !stack.isEmpty() )
+      {
+        st = stack.pop();
+
+        Set<State> U = new HashSet<>();
+
+        U.add( st );
+
+        for ( int e = _head[ st.n() ]; e != NO_EDGE; e = _next[e] )
+          if ( _label[e] == Input.EPS_VALUE )
+            U.add( new State( _to[e] ) );
+
+        for ( State su : U )
+        {
+          if ( !closure.contains( su ) )
+          {
+            closure.add( su );
+            stack.push( su );
+          }
+        }
+      }
+    }
+
+    return closure;
+  }
+
+  /** Given T - a set of NFA states, and A - an input, we would
+   *  like to know which states in the NFA are reachable from T
+   *  with the input A.
+   */
+  public Set<State> _nextNStates( Set<State> T, Input A )
+  {
+    // The function traverses the set T, and looks for
+    // transitions on the given input, returning the states that
+    // can be reached. It doesn't take into account the *eps*
+    // transitions from those states - there's eps-closure
+    // algorithm for that.
+
+    Set<State> states = new HashSet<>();
+
+    if ( A == Input.EPS || A == Input.NONE )
+      return states;
+
+    for ( State st : T )
+      for ( int e = _head[ st.n() ]; e != NO_EDGE; e = _next[e] )
+        if ( _label[e] == A.v ) states.add( new State( _to[e] ) );
+
+    return states;
+  }
+
+  /** The bitset version of _nextNStates, for DFAs that are
+   *  built one transition at a time: ORs into next the
+   *  eps-closures of the states reached from T on input A.
+   */
+  void _nextNStates( StateSet T, char A, StateSet[] closures, long[] next )
+  {
+    for ( int st = T.nextSetBit( 0 ); st >= 0; st = T.nextSetBit( st + 1 ) )
+    {
+      for ( int e = _head[st]; e != NO_EDGE; e = _next[e] )
+        if ( _label[e] == A ) StateSet.or( next, closures[ _to[e] ] );
+    }
+  }
+
+  public static void main( String args[] )
+  {
+    NFA nfa = new NFA( 11, 0, 10 ); 
+
+    nfa.addTransition( 0,  1, Input.EPS ); 
+    nfa.addTransition( 0,  7, Input.EPS ); 
+    nfa.addTransition( 1,  2, Input.EPS ); 
+    nfa.addTransition( 1,  4, Input.EPS );
+    nfa.addTransition( 2,  3, new Input( 'a' ) );
+    nfa.addTransition( 4,  5, new Input( 'b' ) );
+    nfa.addTransition( 3,  6, Input.EPS ); 
+    nfa.addTransition( 5,  6, Input.EPS ); 
+    nfa.addTransition( 6,  1, Input.EPS ); 
+    nfa.addTransition( 6,  7, Input.EPS ); 
+    nfa.addTransition( 7,  8, new Input( 'a' ) );
+    nfa.addTransition( 8,  9, new Input( 'b' ) );
+    nfa.addTransition( 9, 10, new Input( 'b' ) );
+   
+    nfa.show();
+
+    ///
+
+    nfa.dumpInternalTranstbl();
+
+    nfa._appendEmptyState(); nfa.dumpInternalTranstbl();
+    nfa._shiftStates( 3 );   nfa.dumpInternalTranstbl();
+
+    NFA anotherNFA = new NFA( 4, 0, 3 );
+
+    anotherNFA.addTransition( 0, 1, new Input( 'a' ) );
+    anotherNFA.addTransition( 0, 0, new Input( 'b' ) );
+    anotherNFA.addTransition( 1, 2, new Input( 'b' ) );
+    anotherNFA.addTransition( 2, 3, new Input( 'b' ) );
+    anotherNFA.addTransition( 2, 1, new Input( 'a' ) );
+    anotherNFA.addTransition( 3, 1, new Input( 'a' ) );
+
+    anotherNFA.dumpInternalTranstbl();
+    nfa._fillStates( anotherNFA ); nfa.dumpInternalTranstbl();
+
+    // NFA regex_r = NFA.buildNFABasic( new Input( 'r' ) );
+    NFA regex_s = NFA.buildNFABasic( new Input( 's' ) );
+    NFA regex_t = NFA.buildNFABasic( new Input( 't' ) );
+
+    /// RegEx #0: s|t
+
+    NFA regex_s_OR_t = NFA.buildNFAAlternation( regex_s, regex_t );
+    // regex_s_OR_t.dumpInternalTranstbl();
+
+    // // RegEx #1: st
+
+    // NFA regex_rs = NFA.buildNFAConcatenation( regex_r, regex_s );
+    // NFA regex_rst = NFA.buildNFAConcatenation( regex_rs, regex_t );
+    // regex_rst.dumpInternalTranstbl();
+
+    // // RegEx #2: s*
+
+    // NFA regex_s_STAR = NFA.buildNFAKleeneStar( regex_s );
+    // regex_s_STAR.dumpInternalTranstbl();
+
+    // // RegEx #3: s*|ts
+
+    // NFA tsNFA = NFA.buildNFAConcatenation( regex_t, regex_s );
+    // NFA regex_s_STAR_or_ts = NFA.buildNFAAlternation( regex_s_STAR, tsNFA );
+    // regex_s_STAR_or_ts.dumpInternalTranstbl();
+
+    // RegEx #4: (s|t)*stt
+
+    NFA regex_s_OR_t_STAR = NFA.buildNFAKleeneStar( regex_s_OR_t );
+    NFA regex_st = NFA.buildNFAConcatenation( regex_s, regex_t );
+    NFA regex_stt = NFA.buildNFAConcatenation( regex_st, regex_t );
+    NFA regex_s_OR_t_STAR_stt = NFA.buildNFAConcatenation( regex_s_OR_t_STAR, regex_stt );
+    regex_s_OR_t_STAR_stt.dumpInternalTranstbl();
+
+    Set<State> s = new HashSet<>();
+    s.add( new State( 6 ) );
+    // System.out.println( s = regex_s_OR_t_STAR_stt._epsClosure( s ) );
+    // System.out.println( s = regex_s_OR_t_STAR_stt._nextNStates( s, new Input( 's' ) ) );
+
+    DFA dfa = regex_s_OR_t_STAR_stt.dfa();
+    dfa.show();
+    System.out.println( dfa.simulate( "sststststtstt" ) );
+
+    assert dfa.simulate( "sststststtstt" );
+    assert dfa.simulate( "stt" );
+    assert !dfa.simulate( "" );
+    assert !dfa.simulate( "sttt" );
+    assert !dfa.simulate( "stx" );
+    assert dfa.count() == 4;
+
+    NFA regex_s_OR_t_TO_NONE = regex_s_OR_t.clone();
+    regex_s_OR_t_TO_NONE.addTransition( 0, 1, Input.NONE );
+    assert !regex_s_OR_t_TO_NONE.dfa().simulate( "s" );
+    assert regex_s_OR_t_TO_NONE.dfa().simulate( "t" );
+    assert regex_s_OR_t.dfa().simulate( "s" );
+
+    // A long literal only needs a couple of edges per state
+
+    NFA regex_long = regex_s;
+    for ( int i = 1; i < 2000; i++ )
+      regex_long = NFA.buildNFAConcatenation( regex_long, i % 2 == 0 ? regex_s : regex_t );
+
+    assert regex_long.count() == 2001;
+    assert regex_long._nedges <= 2 * regex_long.count();
+
+    StringBuilder long_literal = new StringBuilder();
+    for ( int i = 0; i < 2000; i++ ) long_literal.append( i % 2 == 0 ? 's' : 't' );
+
+    DFA dfa_long = regex_long.dfa();
+    assert dfa_long.count() == 2001;
+    assert dfa_long.simulate( long_literal );
+    assert !dfa_long.simulate( long_literal.substring( 1 ) );
+
+    // A large alternation of two-letter words
+
+    NFA regex_words = null;
+    for ( char c = 'a'; c <= 'z'; c++ )
+    {
+      NFA word = NFA.buildNFAConcatenation( NFA.buildNFABasic( new Input( c ) ), NFA.buildNFABasic( new Input( 'x' ) ) );
+      regex_words = regex_words == null ? word : NFA.buildNFAAlternation( regex_words, word );
+    }
+
+    DFA dfa_words = regex_words.dfa();
+    assert dfa_words.nclasses() == 3; // nothing, 'x' and every other letter
+    assert dfa_words.simulate( "ax" ) && dfa_words.simulate( "qx" ) && dfa_words.simulate( "zx" );
+    assert !dfa_words.simulate( "xa" ) && !dfa_words.simulate( "a" ) && !dfa_words.simulate( "axx" );
+
+    // The reversed NFA, and the unanchored DFA that accepts
+    // whatever ends with a match
+
+    DFA dfa_rev = regex_s_OR_t_STAR_stt.reversed().dfa();
+    assert dfa_rev.simulate( "tts" ) && dfa_rev.simulate( "ttsts" ) && !dfa_rev.simulate( "stt" );
+
+    DFA dfa_search = regex_s_OR_t_STAR_stt._dfa( null, true );
+    assert dfa_search.simulate( "stt" ) && dfa_search.simulate( "ttsstt" ) && !dfa_search.simulate( "sttt" );
+    for ( int q = 0; q < dfa_search.count(); q++ )
+      assert dfa_search.next( q, 's' ) != DFA.DEAD && dfa_search.next( q, 't' ) != DFA.DEAD;
+
+    // A supplementary character is its two surrogates in a row,
+    // and can't be a single transition
+
+    NFA smile = NFA.buildNFABasic( new Input( 0x1f600 ) );
+    assert smile.count() == 3 && smile.dfa().simulate( "\ud83d\ude00" ) && !smile.dfa().simulate( "\ud83d" );
+
+    try {
+      smile.addTransition( 0, 2, new Input( 0x1f600 ) );
+      assert false : "a supplementary character is two transitions";
+    } catch ( IllegalArgumentException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    // The builder makes the same automata as the combinators,
+    // in place: (s|t)*stt, (s?t)+ and a supplementary star
+
+    NFA.Builder builder = new NFA.Builder();
+    NFA built = builder.build( builder.concatenation( builder.concatenation( builder.concatenation(
+      builder.kleeneStar( builder.alternation( builder.symbol( new Input( 's' ) ), builder.symbol( new Input( 't' ) ) ) ),
+      builder.symbol( new Input( 's' ) ) ), builder.symbol( new Input( 't' ) ) ), builder.symbol( new Input( 't' ) ) ) );
+
+    builder = new NFA.Builder();
+    NFA built_plus = builder.build( builder.plus( builder.concatenation(
+      builder.optional( builder.symbol( new Input( 's' ) ) ), builder.symbol( new Input( 't' ) ) ) ) );
+
+    builder = new NFA.Builder();
+    NFA built_smiles = builder.build( builder.kleeneStar( builder.symbol( new Input( 0x1f600 ) ) ) );
+
+    String[] words = { "", "s", "t", "st", "stt", "tstt", "sststt", "sttt", "tt", "stst", "ts",
+                       "\ud83d\ude00", "\ud83d\ude00\ud83d\ude00", "\ud83d" };
+    for ( String w : words )
+    {
+      assert built.dfa().simulate( w ) == regex_s_OR_t_STAR_stt.dfa().simulate( w ) : w;
+      assert built_plus.dfa().simulate( w ) == w.matches( "(s?t)+" ) : w;
+      assert built_smiles.dfa().simulate( w ) == w.matches( "(\ud83d\ude00)*" ) : w;
+    }
+
+    try {
+      builder.build( builder.empty() );
+      assert false : "a builder builds one NFA";
+    } catch ( IllegalStateException ex ) {
+      System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+    }
+
+    // A 10000-symbol literal: one state per symbol, linked in one
+    // pass where the combinators copy the whole NFA every step
+
+    long t0 = System.nanoTime();
+
+    builder = new NFA.Builder();
+    NFA.Builder.Fragment f = builder.symbol( new Input( 's' ) );
+    for ( int i = 1; i < 10000; i++ )
+      f = builder.concatenation( f, builder.symbol( new Input( i % 2 == 0 ? 's' : 't' ) ) );
+
+    NFA built_long = builder.build( f );
+    long t1 = System.nanoTime();
+
+    NFA combined_long = regex_s;
+    for ( int i = 1; i < 10000; i++ )
+      combined_long = NFA.buildNFAConcatenation( combined_long, i % 2 == 0 ? regex_s : regex_t );
+
+    long t2 = System.nanoTime();
+
+    assert built_long.count() == 10001 && built_long._nedges == 10000;
+    assert built_long.count() == combined_long.count();
+
+    System.out.println( String.format( "10000 symbols: builder %.2f ms, combinators %.2f ms", ( t1 - t0 ) / 1e6, ( t2 - t1 ) / 1e6 ) );
+  }
+}
@@ -0,0 +1,187 @@
+package miniregex;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Matches one large input on several cores. Over a piece of the
+ *  input the DFA is a function from the state it starts in to the
+ *  state it ends in, so the input is cut into chunks, the function
+ *  of every chunk but the first is computed in parallel on a
+ *  fork-join pool, and they are composed in order with the state
+ *  the first chunk leads to.
+ *
+ *  A chunk's function is computed by running all the states of
+ *  the DFA over it at once. Runs that reach the same state go on
+ *  as one, and in practice they all merge (or die) within a few
+ *  characters, after which the chunk costs a single walk: the
+ *  other states only cost something at the head of the chunk.
+ */
+final class ParallelMatcher
+{
+  static final int CHUNK_SIZE = 1 << 20;
+
+  private final DFA          dfa;
+  private final ForkJoinPool pool;
+  private final int          chunkSize;
+
+  public ParallelMatcher( DFA dfa ) { this( dfa, ForkJoinPool.commonPool(), CHUNK_SIZE ); }
+
+  public ParallelMatcher( DFA dfa, ForkJoinPool pool, int chunkSize )
+  {
+    if ( chunkSize < 1 )
+      throw new IllegalArgumentException( "chunkSize must be positive" );
+
+    this.dfa       = dfa;
+    this.pool      = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int to )
+  {
+    int s = walk( dfa.start(), in, from, to );
+    return s != DFA.DEAD && dfa.isFinal( s );
+  }
+
+  /** Same as DFA.walk: the state the DFA ends in from s over
+   *  in[from..to), DEAD if it got stuck on the way.
+   */
+  public int walk( int s, CharSequence in, int from, int to )
+  {
+    if ( to - from <= chunkSize )
+      return dfa.walk( s, in, from, to );
+
+    List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+    for ( int lo = from + chunkSize; lo < to; lo += chunkSize )
+    {
+      final int chunk_from = lo;
+      final int chunk_to   = ( int )Math.min( ( long )lo + chunkSize, to );
+
+      tasks.add( pool.submit( () -> _mapping( dfa, in, chunk_from, chunk_to ) ) );
+    }
+
+    s = dfa.walk( s, in, from, from + chunkSize );
+
+    for ( ForkJoinTask<int[]> task : tasks )
+    {
+      if ( s == DFA.DEAD )
+      {
+        task.cancel( false );
+        continue;
+      }
+
+      s = task.join()[s];
+    }
+
+    return s;
+  }
+
+  /** Returns the state the DFA ends in over in[from..to) from each
+   *  of its states, DEAD for those from which it gets stuck.
+   */
+  static int[] _mapping( DFA dfa, CharSequence in, int from, int to )
+  {
+    final int n = dfa.count();
+
+    // The distinct states the live runs are in are cur[0..live),
+    // and run[q] is the index in cur of the run started from q,
+    // -1 once it is stuck
+
+    int[] cur  = new int[n];
+    int[] next = new int[n];
+    int[] run  = new int[n];
+    int[] slot = new int[n];
+    int[] moved_to = new int[n];
+
+    for ( int q = 0; q < n; q++ ) { cur[q] = q; run[q] = q; }
+    Arrays.fill( slot, -1 );
+
+    int live = n;
+    int i    = from;
+
+    while ( live > 1 && i < to )
+    {
+      int cls = dfa._class( in.charAt( i++ ) );
+      int m   = 0;
+
+      for ( int j = 0; j < live; j++ )
+      {
+        int t = dfa._next( cur[j], cls );
+
+        if ( t == DFA.DEAD )
+          moved_to[j] = -1;
+        else
+        {
+          if ( slot[t] < 0 ) { slot[t] = m; next[m++] = t; }
+          moved_to[j] = slot[t];
+        }
+      }
+
+      for ( int j = 0; j < m; j++ ) slot[ next[j] ] = -1;
+
+      // Runs are renumbered in order, so as long as none merges
+      // or dies moved_to is the identity and run[] still holds
+
+      if ( m < live )
+        for ( int q = 0; q < n; q++ )
+          if ( run[q] >= 0 ) run[q] = moved_to[ run[q] ];
+
+      int[] swap = cur; cur = next; next = swap;
+      live = m;
+    }
+
+    if ( live == 1 )
+      cur[0] = dfa.walk( cur[0], in, i, to );
+
+    int[] mapping = new int[n];
+    for ( int q = 0; q < n; q++ )
+      mapping[q] = run[q] < 0 || live == 0 ? DFA.DEAD : cur[ run[q] ];
+
+    return mapping;
+  }
+
+  public static void main( String args[] )
+  {
+    DFA dfa = Regex.compile( "(s|t)*stt" ).dfa();
+
+    // Every chunk's mapping agrees with walking from each state
+
+    Random random = new Random( 5 );
+    for ( int n = 0; n < 200; n++ )
+    {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt( 60 );
+      for ( int i = 0; i < len; i++ ) sb.append( "sstx".charAt( random.nextInt( n % 2 == 0 ? 2 : 4 ) ) );
+
+      int[] mapping = _mapping( dfa, sb, 0, len );
+      for ( int q = 0; q < dfa.count(); q++ )
+        assert mapping[q] == dfa.walk( q, sb, 0, len ) : sb;
+
+      for ( int chunk : new int[]{ 1, 2, 7 } )
+        assert new ParallelMatcher( dfa, ForkJoinPool.commonPool(), chunk ).simulate( sb ) == dfa.simulate( sb ) : sb;
+    }
+
+    ParallelMatcher matcher = new ParallelMatcher( dfa, ForkJoinPool.commonPool(), 3 );
+    assert matcher.simulate( "sststststtstt" );
+    assert !matcher.simulate( "sststxststtstt" );
+    assert matcher.simulate( "xxsttxx", 2, 5 );
+    assert !matcher.simulate( "" );
+
+    // A large input over many chunks, against the sequential walk
+
+    String huge = "st".repeat( 16 << 20 ) + "t";
+
+    long t0 = System.nanoTime();
+    boolean sequential = dfa.simulate( huge );
+    long t1 = System.nanoTime();
+    boolean parallel = new ParallelMatcher( dfa ).simulate( huge );
+    long t2 = System.nanoTime();
+
+    System.out.println( String.format( "Matched %d MB sequentially in %d ms, in parallel in %d ms",
+                                       huge.length() >> 20, ( t1 - t0 ) / 1000000, ( t2 - t1 ) / 1000000 ) );
+
+    assert sequential && parallel;
+    assert !new ParallelMatcher( dfa ).simulate( huge + "s" );
+  }
+}
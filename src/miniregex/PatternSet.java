@@ -0,0 +1,102 @@
+package miniregex;
+
+import java.util.*;
+
+/** Many patterns compiled into a single DFA. The NFAs of all the
+ *  patterns are joined with NFA.buildNFAUnion, and every final
+ *  state of the resulting DFA carries the ids of the patterns it
+ *  matches, so one pass over an input tells which of the patterns
+ *  match it, however many there are.
+ *
+ *  The id of a pattern is its position in the list it was
+ *  compiled from.
+ */
+final class PatternSet
+{
+  private final String[] patterns;
+  private final DFA      dfa;
+
+  private PatternSet( String[] patterns, DFA dfa )
+  {
+    this.patterns = patterns;
+    this.dfa      = dfa.freeze();
+  }
+
+  public static PatternSet compile( List<String> patterns ) { return compile( patterns.toArray( new String[0] ) ); }
+
+  public static PatternSet compile( String... patterns )
+  {
+    long  t0   = System.nanoTime();
+    NFA[] nfas = new NFA[ patterns.length ];
+    for ( int i = 0; i < patterns.length; i++ )
+      nfas[i] = Regex.parse( patterns[i] );
+
+    int[] ends  = new int[ patterns.length ];
+    NFA   union = NFA.buildNFAUnion( nfas, ends );
+
+    PatternSet set = new PatternSet( patterns.clone(), union._dfa( ends ) );
+
+    // Reported as one compilation, under the patterns joined by '|'
+
+    Metrics.Sink sink = Metrics.sink();
+    if ( sink != null )
+      sink.compiled( String.join( "|", patterns ), union.count(), set.dfa.count(), set.dfa.tableBytes(), System.nanoTime() - t0 );
+
+    return set;
+  }
+
+  public int    size()            { return patterns.length; }
+  public String pattern( int id ) { return patterns[id];    }
+  public DFA    dfa()             { return dfa;             }
+
+  /** Returns the sorted ids of the patterns that match the whole
+   *  input. The array is shared by every input that ends in the
+   *  same DFA state and must not be modified.
+   */
+  public int[] matches( CharSequence in )
+  {
+    int   s   = dfa.walk( dfa.start(), in, 0, in.length() );
+    int[] ids = s == DFA.DEAD ? DFA.NO_MATCHES : dfa.matchIds( s );
+
+    Metrics.Sink sink = Metrics.sink();
+    if ( sink != null ) sink.scanned( null, in.length(), ids.length );
+
+    return ids;
+  }
+
+  public boolean matchesAny( CharSequence in ) { return dfa.simulate( in ); }
+
+  public static void main( String args[] )
+  {
+    PatternSet set = PatternSet.compile( "(s|t)*stt", "s+t*", "st*", "x|y" );
+
+    assert Arrays.equals( set.matches( "stt" ),  new int[]{ 0, 1, 2 } );
+    assert Arrays.equals( set.matches( "sstt" ), new int[]{ 0, 1 } );
+    assert Arrays.equals( set.matches( "s" ),    new int[]{ 1, 2 } );
+    assert Arrays.equals( set.matches( "y" ),    new int[]{ 3 } );
+    assert set.matches( "ts" ).length == 0;
+    assert set.matches( "sz" ).length == 0;
+    assert set.matchesAny( "sss" ) && !set.matchesAny( "xy" );
+
+    // Thousands of rules in one automaton
+
+    List<String> rules = new ArrayList<>();
+    for ( int i = 0; i < 5000; i++ )
+      rules.add( "rule" + i + "(a|b)*" );
+
+    rules.add( "rule(0|1|2|3|4|5|6|7|8|9)+" );
+
+    long t0 = System.nanoTime();
+    PatternSet rule_set = PatternSet.compile( rules );
+    long t1 = System.nanoTime();
+
+    System.out.println( String.format( "Compiled %d rules into %d DFA states in %d ms",
+                                       rule_set.size(), rule_set.dfa().count(), ( t1 - t0 ) / 1000000 ) );
+
+    assert Arrays.equals( rule_set.matches( "rule42abba" ), new int[]{ 42 } );
+    assert Arrays.equals( rule_set.matches( "rule4999" ),   new int[]{ 4999, 5000 } );
+    assert Arrays.equals( rule_set.matches( "rule12345" ),  new int[]{ 5000 } );
+    assert rule_set.matches( "rule42abc" ).length == 0;
+    assert rule_set.pattern( 42 ).equals( "rule42(a|b)*" );
+  }
+}
@@ -0,0 +1,181 @@
+package miniregex;
+
+import java.util.*;
+
+/** Matches by simulating the NFA directly, the way Thompson's and
+ *  Pike's VMs do: the set of states the input so far can lead to
+ *  is carried from one character to the next. It costs O(n) per
+ *  character for an NFA of n states, whatever the pattern, and
+ *  nothing has to be compiled beforehand, which makes it the
+ *  cheapest way to run a pattern that is matched only once.
+ *
+ *  The current and the next sets of states are sparse sets sized
+ *  once for the NFA, so simulate() allocates nothing. They are
+ *  also what makes a PikeVM unsafe to share between threads.
+ */
+final class PikeVM
+{
+  /** A set of states 0..n-1 with O(1) add, contains and clear,
+   *  and iteration in insertion order (Briggs & Torczon).
+   */
+  private static final class AdHocSparseSet
+  {
+    private final int[] _dense;
+    private final int[] _sparse;
+    private int _N = 0;
+
+    AdHocSparseSet( int capacity )
+    {
+      _dense  = new int[ capacity ];
+      _sparse = new int[ capacity ];
+    }
+
+    int  size()       { return _N;        }
+    int  get( int i ) { return _dense[i]; }
+    void clear()      { _N = 0;           }
+
+    boolean contains( int s )
+    {
+      int i = _sparse[s];
+      return i < _N && _dense[i] == s;
+    }
+
+    void add( int s )
+    {
+      _sparse[s]   = _N;
+      _dense[_N++] = s;
+    }
+  }
+
+  static final int EPS = Input.EPS_VALUE;
+
+  private final int[] head;
+  private final int[] next;
+  private final int[] to;
+  private final int[] labels;
+  private final int   start;
+  private final int   end;
+
+  private AdHocSparseSet _clist;
+  private AdHocSparseSet _nlist;
+
+  private final int[] _stack;
+
+  /** The NFA's adjacency lists (see NFA), with the labels as
+   *  characters and EPS for the *eps* transitions.
+   */
+  PikeVM( int[] head, int[] next, int[] to, int[] labels, int start, int end )
+  {
+    this.head   = head;
+    this.next   = next;
+    this.to     = to;
+    this.labels = labels;
+    this.start  = start;
+    this.end    = end;
+
+    this._clist = new AdHocSparseSet( head.length );
+    this._nlist = new AdHocSparseSet( head.length );
+    this._stack = new int[ head.length ];
+  }
+
+  /** Adds s and everything reachable from it by *eps* transitions
+   *  to set. A state is marked as soon as it is pushed, so the
+   *  stack never holds more than n states.
+   */
+  private void _addClosure( AdHocSparseSet set, int s )
+  {
+    if ( set.contains( s ) ) return;
+
+    int top = 0;
+    set.add( s );
+    _stack[top++] = s;
+
+    while ( top > 0 )
+    {
+      int st = _stack[--top];
+
+      for ( int e = head[st]; e != -1; e = next[e] )
+      {
+        if ( labels[e] != EPS || set.contains( to[e] ) ) continue;
+
+        set.add( to[e] );
+        _stack[top++] = to[e];
+      }
+    }
+  }
+
+  public boolean simulate( CharSequence to_recog ) { return simulate( to_recog, 0, to_recog.length() ); }
+
+  public boolean simulate( CharSequence in, int from, int until )
+  {
+    _clist.clear();
+    _addClosure( _clist, start );
+
+    for ( int i = from; i < until && _clist.size() > 0; i++ )
+    {
+      char c = in.charAt( i );
+      _nlist.clear();
+
+      for ( int j = 0; j < _clist.size(); j++ )
+      {
+        int st = _clist.get( j );
+
+        for ( int e = head[st]; e != -1; e = next[e] )
+          if ( labels[e] == c ) _addClosure( _nlist, to[e] );
+      }
+
+      AdHocSparseSet swap = _clist;
+      _clist = _nlist;
+      _nlist = swap;
+    }
+
+    return _clist.contains( end );
+  }
+
+  public static void main( String args[] )
+  {
+    NFA s = NFA.buildNFABasic( new Input( 's' ) );
+    NFA t = NFA.buildNFABasic( new Input( 't' ) );
+    NFA stt = NFA.buildNFAConcatenation( NFA.buildNFAConcatenation( s, t ), t );
+    NFA regex = NFA.buildNFAConcatenation( NFA.buildNFAKleeneStar( NFA.buildNFAAlternation( s, t ) ), stt );
+
+    DFA    dfa = regex.dfa();
+    PikeVM vm  = regex.pikeVM();
+
+    for ( String in : new String[]{ "", "s", "stt", "sststststtstt", "sttt", "tts", "stx", "ttstt" } )
+      assert dfa.simulate( in ) == vm.simulate( in ) : in;
+
+    assert vm.simulate( "xxsttxx", 2, 5 );
+    assert !vm.simulate( "xxsttxx", 2, 6 );
+
+    // (a|b)*a(a|b){20}, whose DFA would have 2^21 states
+
+    NFA a = NFA.buildNFABasic( new Input( 'a' ) );
+    NFA b = NFA.buildNFABasic( new Input( 'b' ) );
+    NFA a_OR_b = NFA.buildNFAAlternation( a, b );
+
+    NFA hostile = NFA.buildNFAConcatenation( NFA.buildNFAKleeneStar( a_OR_b ), a );
+    for ( int i = 0; i < 20; i++ )
+      hostile = NFA.buildNFAConcatenation( hostile, a_OR_b );
+
+    PikeVM hostile_vm = hostile.pikeVM();
+
+    Random random = new Random( 7 );
+    for ( int n = 0; n < 100; n++ )
+    {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt( 5000 );
+      for ( int i = 0; i < len; i++ ) sb.append( random.nextBoolean() ? 'a' : 'b' );
+
+      boolean expected = len >= 21 && sb.charAt( len - 21 ) == 'a';
+      assert hostile_vm.simulate( sb ) == expected : sb;
+    }
+
+    // An eps-loop must not trap the closure: (s*)*
+
+    NFA s_STAR_STAR = NFA.buildNFAKleeneStar( NFA.buildNFAKleeneStar( s ) );
+    assert s_STAR_STAR.pikeVM().simulate( "" );
+    assert s_STAR_STAR.pikeVM().simulate( "sss" );
+    assert !s_STAR_STAR.pikeVM().simulate( "st" );
+  }
+}
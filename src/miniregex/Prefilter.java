@@ -0,0 +1,198 @@
+package miniregex;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/** A cheap test that rules out most inputs before the automaton
+ *  runs: every match of a pattern contains its required literal
+ *  (see NFA._requiredLiterals) and starts with its required
+ *  prefix, so an input without them can be rejected by a plain
+ *  substring search.
+ *
+ *  On a String the search is String.indexOf, which the JVM turns
+ *  into vectorized code. Other CharSequences and ISO-8859-1 bytes
+ *  go through Boyer-Moore-Horspool, which skips ahead by up to the
+ *  literal's length at each step.
+ */
+final class Prefilter
+{
+  public final String literal;
+  public final String prefix;
+
+  /** Horspool's shifts, by the last character of the window, its
+   *  low byte standing for it. Characters that share a low byte
+   *  get the smallest of their shifts, which is always safe.
+   */
+  private final int[]  _shift;
+  private final byte[] _bytes;
+
+  private Prefilter( String literal, String prefix )
+  {
+    this.literal = literal;
+    this.prefix  = prefix;
+
+    int m = literal.length();
+
+    this._shift = new int[256];
+    Arrays.fill( _shift, m );
+    for ( int i = 0; i < m - 1; i++ )
+      _shift[ literal.charAt( i ) & 0xff ] = m - 1 - i;
+
+    byte[] bytes = new byte[m];
+    for ( int i = 0; i < m; i++ )
+    {
+      char c = literal.charAt( i );
+      if ( c > 0xff ) { bytes = null; break; }
+      bytes[i] = ( byte )c;
+    }
+    this._bytes = bytes;
+  }
+
+  /** Returns the prefilter of the NFA's required literals, or null
+   *  when it has none worth searching for.
+   */
+  public static Prefilter of( NFA nfa )
+  {
+    List<String> literals = nfa._requiredLiterals();
+
+    // The longest literal is the rarest, most likely
+
+    String longest = "";
+    for ( String literal : literals )
+      if ( literal.length() > longest.length() ) longest = literal;
+
+    if ( longest.isEmpty() ) return null;
+
+    return new Prefilter( longest, literals.get( 0 ) );
+  }
+
+  /** Tells whether in[from..to) may match as a whole.
+   */
+  public boolean mayMatch( CharSequence in, int from, int to )
+  {
+    if ( to - from < literal.length() ) return false;
+
+    for ( int i = 0; i < prefix.length(); i++ )
+      if ( in.charAt( from + i ) != prefix.charAt( i ) ) return false;
+
+    return indexOf( in, from, to ) >= 0;
+  }
+
+  /** Returns the first position of the literal in in[from..to), or
+   *  -1 when it is not there.
+   */
+  public int indexOf( CharSequence in, int from, int to )
+  {
+    if ( in instanceof String && to == in.length() )
+      return ( ( String )in ).indexOf( literal, from );
+
+    final int m    = literal.length();
+    final char last = literal.charAt( m - 1 );
+
+    for ( int i = from + m - 1; i < to; )
+    {
+      char c = in.charAt( i );
+
+      if ( c == last && _regionMatches( in, i - m + 1 ) ) return i - m + 1;
+      i += _shift[ c & 0xff ];
+    }
+
+    return -1;
+  }
+
+  /** Returns the first position of the literal, encoded in
+   *  ISO-8859-1, in buf[from..to), or -1 when it is not there. The
+   *  buffer's position is left untouched.
+   */
+  public int indexOf( ByteBuffer buf, int from, int to )
+  {
+    if ( _bytes == null ) return -1;
+
+    final int  m    = _bytes.length;
+    final byte last = _bytes[ m - 1 ];
+
+    for ( int i = from + m - 1; i < to; )
+    {
+      byte b = buf.get( i );
+
+      if ( b == last )
+      {
+        int j = 0;
+        while ( j < m - 1 && buf.get( i - m + 1 + j ) == _bytes[j] ) j++;
+        if ( j == m - 1 ) return i - m + 1;
+      }
+
+      i += _shift[ b & 0xff ];
+    }
+
+    return -1;
+  }
+
+  /** Tells whether the literal can be found in ISO-8859-1 bytes at
+   *  all.
+   */
+  public boolean isLatin1() { return _bytes != null; }
+
+  private boolean _regionMatches( CharSequence in, int at )
+  {
+    for ( int j = 0; j < literal.length() - 1; j++ )
+      if ( in.charAt( at + j ) != literal.charAt( j ) ) return false;
+
+    return true;
+  }
+
+  @Override
+  public String toString() { return String.format( "Prefilter[prefix=\"%s\", literal=\"%s\"]", prefix, literal ); }
+
+  public static void main( String args[] )
+  {
+    Object[][] cases = {
+      { "(s|t)*error",      "",      "error" },
+      { "error(s|t)*",      "error", "error" },
+      { "ab(c|d)*efg(x)*h", "ab",    "efg"   },
+      { "a(b|c)d",          "a",     "a"     },
+      { "(ab)+",            "ab",    "ab"    },
+      { "x*y",              "",      "y"     },
+      { "(a|b)*",           null,    null    },
+      { "",                 null,    null    },
+      { "a?",               null,    null    },
+    };
+
+    for ( Object[] c : cases )
+    {
+      Prefilter pf = Prefilter.of( Regex.parse( ( String )c[0] ) );
+
+      System.out.println( c[0] + ": " + pf );
+      if ( c[1] == null ) { assert pf == null : c[0]; continue; }
+
+      assert pf.prefix.equals( c[1] ) && pf.literal.equals( c[2] ) : c[0] + ": " + pf;
+    }
+
+    Prefilter pf = Prefilter.of( Regex.parse( "(s|t)*error" ) );
+
+    assert pf.indexOf( "stserror", 0, 8 ) == 3;
+    assert pf.indexOf( new StringBuilder( "stserrorerror" ), 4, 13 ) == 8;
+    assert pf.indexOf( new StringBuilder( "errorerro" ), 1, 9 ) == -1;
+    assert pf.mayMatch( "sterror", 0, 7 ) && !pf.mayMatch( "sterro", 0, 6 );
+    assert !Prefilter.of( Regex.parse( "ab(c)*" ) ).mayMatch( "bab", 0, 3 );
+
+    // Against a naive search, on all kinds of text
+
+    Random random = new Random( 16 );
+    for ( int n = 0; n < 2000; n++ )
+    {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt( 30 );
+      for ( int i = 0; i < len; i++ ) sb.append( "erorx\u0165".charAt( random.nextInt( 6 ) ) );
+
+      int from     = len == 0 ? 0 : random.nextInt( len );
+      int expected = sb.indexOf( "error", from );
+
+      assert pf.indexOf( sb, from, len ) == expected : sb;
+      assert pf.indexOf( sb.toString(), from, len ) == expected : sb;
+
+      ByteBuffer buf = ByteBuffer.wrap( sb.toString().getBytes( java.nio.charset.StandardCharsets.ISO_8859_1 ) );
+      assert pf.indexOf( buf, from, len ) == expected : sb;
+    }
+  }
+}
@@ -0,0 +1,740 @@
+package miniregex;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A compiled regular expression. The supported syntax is the
+ *  basis the NFA combinators provide plus the usual shorthands:
+ *
+ *    xy      concatenation
+ *    x|y     alternation
+ *    x*      zero or more x
+ *    x+      one or more x, that is xx*
+ *    x?      zero or one x, that is (x|eps)
+ *    (x)     grouping
+ *    \c      the character c itself, e.g. \* or \\
+ *
+ *  Any other character stands for itself. Characters are code
+ *  points, a supplementary one is never split in two: in x\ud83d\ude00*
+ *  the star repeats the whole emoji. compile() keeps the most
+ *  recently used patterns in a bounded cache, so code that
+ *  evaluates the same patterns over and over only pays for the
+ *  compilation once.
+ *
+ *  A Regex never changes once compiled: its DFAs are frozen, the
+ *  ones built lazily are published through volatile fields, and
+ *  matching keeps its state in locals. Any number of threads can
+ *  match against the same Regex at once, without locks; only
+ *  compile() synchronizes, on the cache.
+ */
+final class Regex
+{
+  /** A LinkedHashMap in access order that drops its least
+   *  recently used entry once it holds more than capacity ones.
+   *  All access goes through the enclosing class's lock.
+   */
+  private static final class AdHocLRUCache<K, V> extends LinkedHashMap<K, V>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private int _capacity;
+
+    AdHocLRUCache( int capacity )
+    {
+      super( 16, 0.75f, true );
+      _capacity = capacity;
+    }
+
+    void setCapacity( int capacity )
+    {
+      _capacity = capacity;
+
+      Iterator<K> it = keySet().iterator();
+      while ( size() > _capacity )
+      {
+        it.next();
+        it.remove();
+      }
+    }
+
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<K, V> eldest ) { return size() > _capacity; }
+  }
+
+  /** A match found in a text: text[start..end).
+   */
+  public static final class Match
+  {
+    public final int start;
+    public final int end;
+
+    Match( int start, int end )
+    {
+      this.start = start;
+      this.end   = end;
+    }
+
+    @Override
+    public int hashCode() { return 31 * start + end; }
+
+    @Override
+    public boolean equals( Object o )
+    {
+      if ( this == o )                  return true;
+      if ( o == null )                  return false;
+      if ( getClass() != o.getClass() ) return false;
+
+      Match m = ( Match )o;
+      return start == m.start && end == m.end;
+    }
+
+    @Override
+    public String toString() { return "[" + start + ", " + end + ")"; }
+  }
+
+  public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+  private static final AdHocLRUCache<String, Regex> cache = new AdHocLRUCache<>( DEFAULT_CACHE_CAPACITY );
+
+  public  final String    pattern;
+  private final DFA       dfa;
+  private final Prefilter prefilter;
+
+  private Regex( String pattern, DFA dfa, Prefilter prefilter )
+  {
+    this.pattern   = pattern;
+    this.dfa       = dfa.freeze();
+    this.prefilter = prefilter;
+  }
+
+  /** The DFA over UTF-8 bytes, built the first time utf8() is
+   *  called. Two threads may both build it, either result will do.
+   */
+  private volatile Utf8DFA _utf8;
+
+  /** Whether hot patterns are compiled to bytecode, see
+   *  BytecodeDFA; off unless -Dminiregex.bytecode=true. Switches
+   *  cost a mispredicted jump on every change of state, which on
+   *  inputs that keep changing state is slower than the table.
+   */
+  public static final boolean BYTECODE = Boolean.getBoolean( "miniregex.bytecode" );
+
+  /** The number of matches() after which the pattern is compiled
+   *  to bytecode.
+   */
+  public static final int HOT_THRESHOLD = 10000;
+
+  /** Counts the calls to matches() up to HOT_THRESHOLD, and no
+   *  further: the call that reaches it compiles the DFA, once,
+   *  and from then on matches() only reads it, whether the DFA
+   *  could be compiled or not.
+   */
+  private final    AtomicInteger _calls = new AtomicInteger();
+  private volatile BytecodeDFA   _compiled;
+
+  /** Tells whether the whole input matches. Inputs that lack the
+   *  pattern's required literal are turned down without running
+   *  the DFA.
+   */
+  public boolean matches( CharSequence in )
+  {
+    boolean matched = _matches( in );
+    _reportScan( in.length(), matched ? 1 : 0 );
+    return matched;
+  }
+
+  private boolean _matches( CharSequence in )
+  {
+    if ( prefilter != null && !prefilter.mayMatch( in, 0, in.length() ) ) return false;
+
+    BytecodeDFA compiled = _compiled;
+    if ( BYTECODE && compiled == null && _calls.get() < HOT_THRESHOLD && _calls.incrementAndGet() == HOT_THRESHOLD )
+      _compiled = compiled = BytecodeDFA.compile( dfa );
+
+    return compiled != null ? compiled.simulate( in ) : dfa.simulate( in );
+  }
+
+  /** Tells whether matches() has turned to the bytecode of the
+   *  DFA. Patterns whose DFA is too large for it never do.
+   */
+  public boolean isCompiledToBytecode() { return _compiled != null; }
+
+  public DFA dfa() { return dfa; }
+
+  /** The pattern's prefilter, null when it has no required
+   *  literal.
+   */
+  public Prefilter prefilter() { return prefilter; }
+
+  /** The pattern's DFA over UTF-8 bytes, to match byte[] and
+   *  ByteBuffer inputs without decoding them.
+   */
+  public Utf8DFA utf8()
+  {
+    Utf8DFA utf8 = _utf8;
+    if ( utf8 == null )
+      _utf8 = utf8 = Utf8DFA.of( parse( pattern ) );
+
+    return utf8;
+  }
+
+  /** Finds the leftmost-longest match in in[from..), or returns
+   *  null when there is none.
+   *
+   *  The text is read forwards once, from from and no further than
+   *  the leftmost match can grow, see _find(). It takes memory in
+   *  the size of the DFA, whatever the length of the text.
+   */
+  public Match find( CharSequence in ) { return find( in, 0 ); }
+
+  public Match find( CharSequence in, int from )
+  {
+    int[] read  = { 0 };
+    Match found = _find( in, from, read );
+
+    _reportScan( read[0], found != null ? 1 : 0 );
+    return found;
+  }
+
+  /** Returns the successive leftmost-longest matches in in, each
+   *  searched for from where the previous one ends, or one
+   *  character further after an empty match.
+   *
+   *  Each search may read past the end of its match as long as a
+   *  longer one is possible, a|a*b over a run of a's up to the end
+   *  of the text every time.
+   */
+  public List<Match> findAll( CharSequence in )
+  {
+    List<Match> matches = _findAll( in );
+    _reportScan( in.length(), matches.size() );
+    return matches;
+  }
+
+  private List<Match> _findAll( CharSequence in )
+  {
+    List<Match> matches = new ArrayList<>();
+    int[]       read    = { 0 };
+
+    for ( int pos = 0; pos <= in.length(); )
+    {
+      Match m = _find( in, pos, read );
+      if ( m == null ) break;
+
+      matches.add( m );
+      pos = m.end > m.start ? m.end : m.start + 1;
+    }
+
+    return matches;
+  }
+
+  private void _reportScan( long chars, int matches )
+  {
+    Metrics.Sink sink = Metrics.sink();
+    if ( sink != null ) sink.scanned( pattern, chars, matches );
+  }
+
+  /** Runs the pattern's DFA from every position at once, from
+   *  from on, and adds the number of characters it read to
+   *  read[0].
+   *
+   *  Threads that reach the same DFA state have the same future,
+   *  so there is one thread per state, with the leftmost start of
+   *  those that met there: at most count() threads whatever the
+   *  text. The first time a thread is final, its start is the
+   *  leftmost a match can have so far. No thread starts after it
+   *  any more, and those that started later are dropped, while
+   *  the ones that started before may still turn final and take
+   *  its place. The search ends when the thread of the best start
+   *  has died with all the others, or at the end of the text.
+   */
+  private Match _find( CharSequence in, int from, int[] read )
+  {
+    int n = in.length();
+    if ( prefilter != null && prefilter.indexOf( in, from, n ) < 0 ) return null;
+
+    int   nstates    = dfa.count();
+    int[] slot       = new int[ nstates ];
+    int[] state      = new int[ nstates ];
+    int[] start      = new int[ nstates ];
+    int[] next_state = new int[ nstates ];
+    int[] next_start = new int[ nstates ];
+    int   live       = 0;
+
+    Arrays.fill( slot, -1 );
+
+    int best_start = -1;
+    int best_end   = -1;
+    int i          = from;
+
+    for ( ;; i++ )
+    {
+      if ( best_start < 0 && slot[ dfa.start() ] < 0 )
+      {
+        slot[ dfa.start() ] = live;
+        state[live]         = dfa.start();
+        start[live++]       = i;
+      }
+
+      for ( int j = 0; j < live; j++ )
+        if ( dfa.isFinal( state[j] ) && ( best_start < 0 || start[j] <= best_start ) )
+        {
+          best_start = start[j];
+          best_end   = i;
+        }
+
+      if ( i == n ) break;
+
+      // One step of every thread that may still make the leftmost
+      // match, those that land on the same state joined
+
+      char c         = in.charAt( i );
+      int  next_live = 0;
+
+      for ( int j = 0; j < live; j++ ) slot[ state[j] ] = -1;
+
+      for ( int j = 0; j < live; j++ )
+      {
+        if ( best_start >= 0 && start[j] > best_start ) continue;
+
+        int t = dfa.next( state[j], c );
+        if ( t == DFA.DEAD ) continue;
+
+        int k = slot[t];
+        if ( k < 0 )
+        {
+          slot[t]                 = next_live;
+          next_state[next_live]   = t;
+          next_start[next_live++] = start[j];
+        }
+        else if ( start[j] < next_start[k] )
+        {
+          next_start[k] = start[j];
+        }
+      }
+
+      int[] swap;
+      swap = state; state = next_state; next_state = swap;
+      swap = start; start = next_start; next_start = swap;
+      live = next_live;
+
+      if ( live == 0 && best_start >= 0 ) { i++; break; }
+    }
+
+    read[0] += i - from;
+    return best_start < 0 ? null : new Match( best_start, best_end );
+  }
+
+  @Override
+  public String toString() { return pattern; }
+
+  /** Returns the compiled pattern, from the cache when it has been
+   *  compiled recently. Compilation runs outside the lock, two
+   *  threads missing on the same pattern may both compile it but
+   *  only one result is kept.
+   */
+  public static Regex compile( String pattern )
+  {
+    synchronized ( cache )
+    {
+      Regex cached = cache.get( pattern );
+      if ( cached != null ) return cached;
+    }
+
+    long  t0       = System.nanoTime();
+    NFA   nfa      = parse( pattern );
+    Regex compiled = new Regex( pattern, nfa.dfa(), Prefilter.of( nfa ) );
+
+    Metrics.Sink sink = Metrics.sink();
+    if ( sink != null )
+      sink.compiled( pattern, nfa.count(), compiled.dfa.count(), compiled.dfa.tableBytes(), System.nanoTime() - t0 );
+
+    synchronized ( cache )
+    {
+      Regex raced = cache.putIfAbsent( pattern, compiled );
+      return raced != null ? raced : compiled;
+    }
+  }
+
+  public static void setCacheCapacity( int capacity )
+  {
+    if ( capacity < 0 )
+      throw new IllegalArgumentException( "capacity must not be negative" );
+
+    synchronized ( cache ) { cache.setCapacity( capacity ); }
+  }
+
+  public static int cacheSize()
+  {
+    synchronized ( cache ) { return cache.size(); }
+  }
+
+  /** The constructions the grammar of parse() is made of, which
+   *  the parser calls bottom-up as it recognizes them. NFA.Builder
+   *  makes Thompson fragments out of them, Glushkov sets of
+   *  positions.
+   */
+  interface Combinators<F>
+  {
+    F symbol( Input in );
+    F empty();
+    F concatenation( F x, F y );
+    F alternation( F x, F y );
+    F kleeneStar( F x );
+    F plus( F x );
+    F optional( F x );
+  }
+
+  /** Builds the NFA of a pattern with an NFA.Builder, in one pass
+   *  linear in its length.
+   */
+  public static NFA parse( String pattern )
+  {
+    NFA.Builder builder = new NFA.Builder();
+    return builder.build( parse( pattern, builder ) );
+  }
+
+  /** Parses a pattern by recursive descent over:
+   *
+   *    alternation   := concatenation ( '|' concatenation )*
+   *    concatenation := repetition*
+   *    repetition    := atom ( '*' | '+' | '?' )*
+   *    atom          := '(' alternation ')' | '\' char | char
+   *
+   *  and returns what the combinators make of it.
+   */
+  static <F> F parse( String pattern, Combinators<F> builder )
+  {
+    int[] pos = { 0 };
+    F     f   = _parseAlternation( builder, pattern, pos );
+
+    if ( pos[0] < pattern.length() )
+      throw _syntaxError( pattern, pos[0], "unbalanced ')'" );
+
+    return f;
+  }
+
+  private static IllegalArgumentException _syntaxError( String pattern, int pos, String what )
+  {
+    return new IllegalArgumentException( String.format( "%s at index %d in \"%s\"", what, pos, pattern ) );
+  }
+
+  private static <F> F _parseAlternation( Combinators<F> builder, String pattern, int[] pos )
+  {
+    F f = _parseConcatenation( builder, pattern, pos );
+
+    while ( pos[0] < pattern.length() && pattern.charAt( pos[0] ) == '|' )
+    {
+      pos[0]++;
+      f = builder.alternation( f, _parseConcatenation( builder, pattern, pos ) );
+    }
+
+    return f;
+  }
+
+  private static <F> F _parseConcatenation( Combinators<F> builder, String pattern, int[] pos )
+  {
+    F f = null;
+
+    while ( pos[0] < pattern.length() )
+    {
+      char c = pattern.charAt( pos[0] );
+      if ( c == '|' || c == ')' ) break;
+
+      F rep = _parseRepetition( builder, pattern, pos );
+      f = f == null ? rep : builder.concatenation( f, rep );
+    }
+
+    return f == null ? builder.empty() : f;
+  }
+
+  private static <F> F _parseRepetition( Combinators<F> builder, String pattern, int[] pos )
+  {
+    F f = _parseAtom( builder, pattern, pos );
+
+    while ( pos[0] < pattern.length() )
+    {
+      char c = pattern.charAt( pos[0] );
+
+      if      ( c == '*' ) { f = builder.kleeneStar( f ); }
+      else if ( c == '+' ) { f = builder.plus( f );       }
+      else if ( c == '?' ) { f = builder.optional( f );   }
+      else                 { break; }
+
+      pos[0]++;
+    }
+
+    return f;
+  }
+
+  private static <F> F _parseAtom( Combinators<F> builder, String pattern, int[] pos )
+  {
+    int c = pattern.codePointAt( pos[0] );
+    pos[0] += Character.charCount( c );
+
+    switch ( c )
+    {
+      case '(':
+      {
+        F f = _parseAlternation( builder, pattern, pos );
+        if ( pos[0] >= pattern.length() || pattern.charAt( pos[0] ) != ')' )
+          throw _syntaxError( pattern, pos[0], "missing ')'" );
+
+        pos[0]++;
+        return f;
+      }
+
+      case '*': case '+': case '?':
+        throw _syntaxError( pattern, pos[0] - 1, "dangling '" + ( char )c + "'" );
+
+      case '\\':
+        if ( pos[0] >= pattern.length() )
+          throw _syntaxError( pattern, pos[0] - 1, "trailing '\\'" );
+
+        c = pattern.codePointAt( pos[0] );
+        pos[0] += Character.charCount( c );
+        return builder.symbol( new Input( c ) );
+
+      default:
+        return builder.symbol( new Input( c ) );
+    }
+  }
+
+  public static void main( String args[] )
+  {
+    Regex regex = Regex.compile( "(s|t)*stt" );
+
+    assert regex.matches( "sststststtstt" );
+    assert regex.matches( "stt" );
+    assert !regex.matches( "sttt" );
+    assert regex.dfa().count() == 4;
+
+    Object[][] cases = {
+      { "ab|cd",      new String[]{ "ab", "cd" },             new String[]{ "", "a", "abcd", "ad" } },
+      { "a+b?",       new String[]{ "a", "aaa", "aab" },      new String[]{ "", "b", "abb", "ba" } },
+      { "(ab)*",      new String[]{ "", "ab", "abab" },       new String[]{ "a", "aba", "ba" } },
+      { "a(|b)c",     new String[]{ "ac", "abc" },            new String[]{ "abbc", "a" } },
+      { "\\(\\*\\\\", new String[]{ "(*\\" },                 new String[]{ "(*", "" } },
+      { "",           new String[]{ "" },                     new String[]{ "a" } },
+      { "((a|b)+c)?", new String[]{ "", "ac", "babac" },      new String[]{ "c", "abca" } },
+      { "x**",        new String[]{ "", "xxxx" },             new String[]{ "y" } },
+    };
+
+    for ( Object[] c : cases )
+    {
+      Regex r = Regex.compile( ( String )c[0] );
+
+      for ( String in : ( String[] )c[1] ) assert r.matches( in )  : c[0] + " ~ " + in;
+      for ( String in : ( String[] )c[2] ) assert !r.matches( in ) : c[0] + " !~ " + in;
+    }
+
+    for ( String bad : new String[]{ "(ab", "ab)", "*a", "a|?", "a\\" } )
+    {
+      try {
+        Regex.parse( bad );
+        assert false : bad;
+      } catch ( IllegalArgumentException ex ) {
+        System.out.println( "Catched the expected exception: \"" + ex + "\"" );
+      }
+    }
+
+    // The cache hands back the same object, and forgets the least
+    // recently used patterns first
+
+    assert Regex.compile( "(s|t)*stt" ) == regex;
+
+    Regex.setCacheCapacity( 2 );
+    assert Regex.cacheSize() == 2;
+
+    Regex r1 = Regex.compile( "r1" );
+    Regex r2 = Regex.compile( "r2" );
+    assert Regex.compile( "r1" ) == r1;
+
+    Regex.compile( "r3" );
+    assert Regex.cacheSize() == 2;
+    assert Regex.compile( "r1" ) == r1;
+    assert Regex.compile( "r2" ) != r2;
+
+    Regex.setCacheCapacity( DEFAULT_CACHE_CAPACITY );
+
+    Thread[] threads = new Thread[8];
+    Regex[]  results = new Regex[8];
+    for ( int i = 0; i < threads.length; i++ )
+    {
+      final int n = i;
+      threads[i] = new Thread( () -> { results[n] = Regex.compile( "(a|b)*abb" ); } );
+      threads[i].start();
+    }
+
+    for ( Thread thread : threads )
+    {
+      try { thread.join(); } catch ( InterruptedException ex ) { throw new RuntimeException( ex ); }
+    }
+
+    for ( Regex r : results ) assert r == results[0] && r.matches( "aabb" );
+
+    // Threads share one Regex, including the reversed DFA they
+    // race to build, and all see the same matches
+
+    Regex       shared = Regex.compile( "(s|t)*x(s|t)+" );
+    String      text   = "stxts txx sxt ".repeat( 200 );
+    List<Match> by_one = Regex.compile( "(t|s)*x(t|s)+" ).findAll( text );
+    boolean[]   agreed = new boolean[8];
+
+    assert shared.dfa().isFrozen();
+
+    for ( int i = 0; i < threads.length; i++ )
+    {
+      final int n = i;
+      threads[i] = new Thread( () -> {
+        boolean same = true;
+        for ( int round = 0; round < 50; round++ )
+          same &= shared.findAll( text ).equals( by_one ) && shared.matches( "stxts" ) && !shared.matches( "stx" );
+        agreed[n] = same;
+      } );
+      threads[i].start();
+    }
+
+    for ( Thread thread : threads )
+    {
+      try { thread.join(); } catch ( InterruptedException ex ) { throw new RuntimeException( ex ); }
+    }
+
+    for ( boolean same : agreed ) assert same;
+
+    // Epsilon is no character, the Greek letter matches like any
+    // other; supplementary characters are repeated and found whole
+
+    Regex greek = Regex.compile( "\u03b1\u03b5+|x?" );
+    assert greek.matches( "\u03b1\u03b5\u03b5" ) && greek.matches( "" ) && !greek.matches( "\u03b1" );
+
+    String smile = "\ud83d\ude00";
+    Regex  emoji = Regex.compile( "(" + smile + "|b)*c" + smile + "*" );
+
+    assert emoji.matches( smile + "b" + smile + "c" ) && emoji.matches( "c" + smile + smile );
+    assert !emoji.matches( "\ud83dc" ) && !emoji.matches( "c" + smile + "\ud83d" );
+    assert emoji.findAll( "xx" + smile + "c" + smile + " bc" ).equals( List.of( new Match( 2, 7 ), new Match( 8, 10 ) ) );
+    assert Regex.compile( "\\" + smile ).matches( smile );
+    assert emoji.utf8() == emoji.utf8() && emoji.utf8().simulate( ( smile + "bc" ).getBytes( java.nio.charset.StandardCharsets.UTF_8 ) );
+
+    // Hot patterns move to bytecode, when it is on, and keep
+    // matching the same
+
+    Regex hot = Regex.compile( "(s|t)*stt" );
+    for ( int i = 0; i < HOT_THRESHOLD + 10; i++ )
+      assert hot.matches( i % 2 == 0 ? "ststt" : "stts" ) == ( i % 2 == 0 );
+    assert hot.isCompiledToBytecode() == BYTECODE;
+
+    // A DFA too large for bytecode stays on the table, and is
+    // counted up to the threshold only
+
+    String long_literal = "st".repeat( 1000 );
+    Regex  large        = Regex.compile( long_literal );
+    for ( int i = 0; i < 2 * HOT_THRESHOLD; i++ )
+      assert large.matches( long_literal );
+
+    assert !large.isCompiledToBytecode() && large._calls.get() == ( BYTECODE ? HOT_THRESHOLD : 0 );
+
+    Regex error = Regex.compile( "(s|t)*error" );
+    assert error.prefilter().literal.equals( "error" );
+    assert error.matches( "ststerror" ) && !error.matches( "ststerr" ) && !error.matches( "errors" );
+    assert Regex.compile( "(s|t)*" ).prefilter() == null;
+
+    // Searching, against trying every substring the slow way
+
+    Regex stt = Regex.compile( "(s|t)*stt" );
+    assert stt.find( "xxsttxstt" ).equals( new Match( 2, 5 ) );
+    assert stt.find( "xxsttxstt", 3 ).equals( new Match( 6, 9 ) );
+    assert stt.find( "ststs" ) == null;
+    assert stt.findAll( "ststtxtsttstt" ).equals( Arrays.asList( new Match( 0, 5 ), new Match( 6, 13 ) ) );
+
+    assert Regex.compile( "a*" ).findAll( "baa" ).equals( Arrays.asList( new Match( 0, 0 ), new Match( 1, 3 ), new Match( 3, 3 ) ) );
+
+    Random random = new Random( 15 );
+    for ( String p : new String[]{ "(s|t)*stt", "a*b|a", "ab|abab", "(ab)+", "b?", "a(b|c)*a", "c+|(ab|ba)+" } )
+    {
+      Regex r = Regex.compile( p );
+
+      for ( int n = 0; n < 200; n++ )
+      {
+        StringBuilder sb = new StringBuilder();
+        int len = random.nextInt( 16 );
+        for ( int i = 0; i < len; i++ ) sb.append( "abcstx".charAt( random.nextInt( p.indexOf( 's' ) >= 0 ? 6 : 3 ) ) );
+
+        List<Match> expected = new ArrayList<>();
+        for ( int pos = 0; pos <= len; )
+        {
+          Match found = null;
+          for ( int i = pos; i <= len && found == null; i++ )
+            for ( int j = len; j >= i && found == null; j-- )
+              if ( r.matches( sb.subSequence( i, j ) ) ) found = new Match( i, j );
+
+          if ( found == null ) break;
+          expected.add( found );
+          pos = found.end > found.start ? found.end : found.start + 1;
+        }
+
+        assert r.findAll( sb ).equals( expected ) : p + " in " + sb + ": " + r.findAll( sb ) + " != " + expected;
+        assert Objects.equals( r.find( sb ), expected.isEmpty() ? null : expected.get( 0 ) ) : p + " in " + sb;
+
+        // Again with find() from where the last match ends
+
+        String      str   = sb.toString();
+        List<Match> found = new ArrayList<>();
+        for ( Match m = r.find( str ); m != null; m = r.find( str, m.end > m.start ? m.end : m.start + 1 ) )
+        {
+          found.add( m );
+          if ( m.start == str.length() ) break;
+        }
+
+        assert found.equals( expected ) : p + " in " + str + ": " + found + " != " + expected;
+      }
+    }
+
+    // A search reads no further than its match can grow: "x" at
+    // the start of a long text takes three characters, one for the
+    // literal and two for the DFA, and a loop of find() over "ab"s
+    // reads each one a few times at most, the literal included
+
+    int           len  = 1 << 20;
+    StringBuilder xab  = new StringBuilder( "x" );
+    for ( int i = 1; i < len; i++ ) xab.append( i % 2 == 0 ? 'a' : 'b' );
+
+    long[]       reads   = { 0 };
+    CharSequence counted = new CharSequence()
+    {
+      public int          length()                       { return xab.length(); }
+      public char         charAt( int i )                { reads[0]++; return xab.charAt( i ); }
+      public CharSequence subSequence( int from, int to ) { return xab.subSequence( from, to ); }
+    };
+
+    assert Regex.compile( "x" ).find( counted ).equals( new Match( 0, 1 ) ) && reads[0] <= 3 : reads[0] + " reads";
+
+    reads[0] = 0;
+    Regex ab     = Regex.compile( "ab" );
+    int   nfound = 0;
+    for ( Match m = ab.find( counted ); m != null; m = ab.find( counted, m.end ) )
+    {
+      assert m.equals( new Match( 2 * nfound + 2, 2 * nfound + 4 ) ) : m;
+      nfound++;
+    }
+
+    assert nfound == len / 2 - 1;
+    assert reads[0] <= 3 * len : reads[0] + " reads for " + len + " characters";
+
+    // The longest match runs to the end, whatever the memory
+
+    assert Regex.compile( "x(a|b)*" ).find( xab ).equals( new Match( 0, len ) );
+
+    // a|a*b on a run of a's: a match starts everywhere, and each
+    // search reads on to the end for a b that could make it longer
+
+    String run = "a".repeat( 2000 );
+
+    Regex a_OR_a_STAR_b = Regex.compile( "a|a*b" );
+    List<Match> ones = a_OR_a_STAR_b.findAll( run );
+
+    assert ones.size() == run.length() && ones.get( 1999 ).equals( new Match( 1999, 2000 ) );
+    assert a_OR_a_STAR_b.find( run + "b", 5 ).equals( new Match( 5, 2001 ) );
+  }
+}
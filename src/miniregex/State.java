@@ -1,3 +1,5 @@
+package miniregex;
+
 import java.util.*;
 
 final class State implements Cloneable
@@ -0,0 +1,178 @@
+package miniregex;
+
+import java.util.*;
+
+/** A set of NFA states kept as a bitset, one bit per state. The
+ *  bits are never changed once the set is built, so it hashes
+ *  and compares by content and can key the DFA states found by
+ *  the subset construction.
+ *
+ *  Only the words from the first to the last non-zero one are
+ *  stored: bits[i] holds states 64 * (first + i) and up. The
+ *  states of an eps-closure, or of a DFA state deep into one of
+ *  many alternatives, are numbered close to each other, so a set
+ *  costs about its span rather than the size of the whole NFA.
+ */
+final class StateSet
+{
+  final long[] bits;
+  final int    first;
+
+  private final int _hash;
+
+  /** The set of the states in buffer[from..to), which is not
+   *  kept: the non-zero span is copied.
+   */
+  public StateSet( long[] buffer, int from, int to )
+  {
+    while ( from < to && buffer[from] == 0 )   from++;
+    while ( to > from && buffer[to - 1] == 0 ) to--;
+
+    this.bits  = Arrays.copyOfRange( buffer, from, to );
+    this.first = to > from ? from : 0;
+    this._hash = 31 * this.first + Arrays.hashCode( this.bits );
+  }
+
+  public StateSet( long[] buffer ) { this( buffer, 0, buffer.length ); }
+
+  public static int words( int nstates ) { return ( nstates + 63 ) >>> 6; }
+
+  public static boolean contains( long[] bits, int s ) { return ( bits[ s >>> 6 ] & ( 1L << s ) ) != 0; }
+  public static void    add( long[] bits, int s )      { bits[ s >>> 6 ] |= 1L << s; }
+
+  public static void or( long[] dst, long[] src )
+  {
+    for ( int i = 0; i < src.length; i++ ) dst[i] |= src[i];
+  }
+
+  /** ORs the states of src into the full-width bitset dst.
+   */
+  public static void or( long[] dst, StateSet src )
+  {
+    for ( int i = 0; i < src.bits.length; i++ ) dst[ src.first + i ] |= src.bits[i];
+  }
+
+  public static boolean isEmpty( long[] bits )
+  {
+    for ( long word : bits ) if ( word != 0 ) return false;
+    return true;
+  }
+
+  /** Returns the first state in bits numbered from or above, or
+   *  -1 when there is none.
+   */
+  public static int nextSetBit( long[] bits, int from )
+  {
+    int w = from >>> 6;
+    if ( w >= bits.length ) return -1;
+
+    long word = bits[w] & ( -1L << from );
+    while ( word == 0 )
+    {
+      if ( ++w == bits.length ) return -1;
+      word = bits[w];
+    }
+
+    return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+  }
+
+  public int firstWord() { return first;               }
+  public int endWord()   { return first + bits.length; }
+
+  public boolean contains( int s )
+  {
+    int w = ( s >>> 6 ) - first;
+    return w >= 0 && w < bits.length && ( bits[w] & ( 1L << s ) ) != 0;
+  }
+
+  public boolean isEmpty() { return bits.length == 0; }
+
+  public int nextSetBit( int from )
+  {
+    int base = first << 6;
+    int next = nextSetBit( bits, Math.max( from - base, 0 ) );
+    return next < 0 ? -1 : base + next;
+  }
+
+  @Override
+  public int hashCode() { return _hash; }
+
+  public boolean equals( Object o )
+  {
+    if ( this == o )                  return true;
+    if ( o == null )                  return false;
+    if ( getClass() != o.getClass() ) return false;
+
+    StateSet set = ( StateSet )o;
+    return _hash == set._hash && first == set.first && Arrays.equals( bits, set.bits );
+  }
+
+  @Override
+  public String toString()
+  {
+    StringJoiner joiner = new StringJoiner( ", ", "[", "]" );
+    for ( int s = nextSetBit( 0 ); s >= 0; s = nextSetBit( s + 1 ) )
+      joiner.add( "" + s );
+
+    return joiner.toString();
+  }
+
+  public static void main( String args[] )
+  {
+    long[] bits_0 = new long[ words( 130 ) ];
+    long[] bits_1 = new long[ words( 130 ) ];
+
+    assert bits_0.length == 3;
+    assert isEmpty( bits_0 );
+    assert nextSetBit( bits_0, 0 ) == -1;
+    assert new StateSet( bits_0 ).isEmpty();
+
+    add( bits_0, 0 );
+    add( bits_0, 64 );
+    add( bits_0, 129 );
+    add( bits_1, 63 );
+
+    assert nextSetBit( bits_0, 0 )   == 0;
+    assert nextSetBit( bits_0, 1 )   == 64;
+    assert nextSetBit( bits_0, 65 )  == 129;
+    assert nextSetBit( bits_0, 130 ) == -1;
+
+    StateSet set_0 = new StateSet( bits_0 );
+    StateSet set_1 = new StateSet( bits_0.clone() );
+    StateSet set_2 = new StateSet( bits_1 );
+
+    System.out.println( set_0 );
+    System.out.println( set_2 );
+
+    assert set_0.equals( set_1 );
+    assert set_0.hashCode() == set_1.hashCode();
+    assert !set_0.equals( set_2 );
+    assert set_0.contains( 129 );
+    assert !set_0.contains( 128 );
+    assert !set_0.contains( 1000 );
+
+    or( bits_1, bits_0 );
+    assert contains( bits_1, 63 ) && contains( bits_1, 64 ) && contains( bits_1, 129 );
+    assert "[0, 63, 64, 129]".equals( new StateSet( bits_1 ).toString() );
+
+    // Only the span from the first to the last non-zero word is
+    // kept, and it doesn't change equality
+
+    long[] wide = new long[ words( 64 * 100 ) ];
+    add( wide, 64 * 40 + 3 );
+    add( wide, 64 * 41 + 5 );
+
+    StateSet narrow = new StateSet( wide );
+    assert narrow.bits.length == 2 && narrow.firstWord() == 40 && narrow.endWord() == 42;
+    assert narrow.contains( 64 * 41 + 5 ) && !narrow.contains( 3 ) && !narrow.contains( 64 * 99 );
+    assert narrow.nextSetBit( 0 ) == 64 * 40 + 3;
+    assert narrow.nextSetBit( 64 * 40 + 4 ) == 64 * 41 + 5;
+    assert narrow.nextSetBit( 64 * 41 + 6 ) == -1;
+    assert narrow.equals( new StateSet( wide, 30, 50 ) );
+    assert !narrow.equals( new StateSet( wide, 30, 41 ) );
+
+    long[] target = new long[ words( 64 * 100 ) ];
+    or( target, narrow );
+    assert Arrays.equals( target, wide );
+  }
+}
@@ -0,0 +1,154 @@
+package miniregex;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Matches an input that arrives in pieces. The matcher carries
+ *  the DFA state from one chunk to the next, so feeding the input
+ *  chunk by chunk and then calling finish() gives the same answer
+ *  as simulate() on the whole input, in constant memory.
+ *
+ *  Once the DFA is stuck no later input can make it match:
+ *  isDead() tells the feeder it may stop reading, and the
+ *  adapters for Reader, InputStream and ReadableByteChannel do so.
+ *
+ *  A StreamMatcher holds the state of one input and must not be
+ *  fed by several threads at once; the DFA itself can be shared.
+ */
+final class StreamMatcher
+{
+  static final int BUFFER_SIZE = 8192;
+
+  private final DFA dfa;
+  private int       state;
+
+  public StreamMatcher( DFA dfa )
+  {
+    this.dfa   = dfa;
+    this.state = dfa.start();
+  }
+
+  public StreamMatcher feed( CharSequence chunk )                   { return feed( chunk, 0, chunk.length() ); }
+  public StreamMatcher feed( CharSequence chunk, int from, int to ) { state = dfa.walk( state, chunk, from, to ); return this; }
+  public StreamMatcher feed( char[] chunk, int off, int len )       { state = dfa.walk( state, chunk, off, len );  return this; }
+  public StreamMatcher feed( CharBuffer chunk )                     { state = dfa.walk( state, chunk );            return this; }
+
+  /** Feeds everything the reader has left, or until the DFA gets
+   *  stuck. The reader is not closed.
+   */
+  public StreamMatcher feed( Reader in ) throws IOException
+  {
+    char[] buffer = new char[ BUFFER_SIZE ];
+
+    for ( int n; !isDead() && ( n = in.read( buffer ) ) >= 0; )
+      feed( buffer, 0, n );
+
+    return this;
+  }
+
+  public StreamMatcher feed( InputStream in, Charset cs ) throws IOException
+  {
+    return feed( new InputStreamReader( in, cs.newDecoder() ) );
+  }
+
+  public StreamMatcher feed( ReadableByteChannel in, Charset cs ) throws IOException
+  {
+    return feed( Channels.newReader( in, cs.newDecoder(), BUFFER_SIZE ) );
+  }
+
+  public boolean isDead() { return state == DFA.DEAD; }
+
+  /** The DFA state the input so far leads to, DFA.DEAD when the
+   *  DFA got stuck.
+   */
+  public int state() { return state; }
+
+  /** Tells whether the input fed since the last reset matches,
+   *  and resets the matcher for the next input.
+   */
+  public boolean finish()
+  {
+    boolean matched = state != DFA.DEAD && dfa.isFinal( state );
+    reset();
+    return matched;
+  }
+
+  public void reset() { state = dfa.start(); }
+
+  public static void main( String args[] ) throws IOException
+  {
+    DFA dfa = Regex.compile( "(s|t)*stt" ).dfa();
+
+    StreamMatcher matcher = new StreamMatcher( dfa );
+
+    assert matcher.feed( "sst" ).feed( "st" ).feed( "" ).feed( "stt" ).finish();
+    assert !matcher.feed( "stt" ).feed( "s" ).finish();
+    assert matcher.feed( "xxsttxx", 2, 5 ).finish();
+    assert matcher.feed( "s".toCharArray(), 0, 1 ).feed( CharBuffer.wrap( "tt" ) ).finish();
+
+    assert matcher.feed( "sx" ).isDead();
+    assert matcher.feed( "stt" ).isDead();
+    assert !matcher.finish();
+
+    Random random = new Random( 3 );
+    for ( int n = 0; n < 100; n++ )
+    {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt( 50 );
+      for ( int i = 0; i < len; i++ ) sb.append( random.nextBoolean() ? 's' : 't' );
+
+      int cut = len == 0 ? 0 : random.nextInt( len );
+      assert matcher.feed( sb, 0, cut ).feed( sb, cut, len ).finish() == dfa.simulate( sb ) : sb;
+    }
+
+    assert matcher.feed( new StringReader( "sststststtstt" ) ).finish();
+    assert !matcher.feed( new StringReader( "sststststtst" ) ).finish();
+
+    byte[] bytes = "ststststt".getBytes( StandardCharsets.UTF_8 );
+    assert matcher.feed( new ByteArrayInputStream( bytes ), StandardCharsets.UTF_8 ).finish();
+    assert matcher.feed( Channels.newChannel( new ByteArrayInputStream( bytes ) ), StandardCharsets.UTF_8 ).finish();
+
+    // A stream far larger than the reads, made up as it is read:
+    // 64 MB of "st" followed by "t"
+
+    final long size = 64L << 20;
+    InputStream huge = new InputStream()
+    {
+      private long _pos = 0;
+
+      @Override
+      public int read()
+      {
+        if ( _pos > size ) return -1;
+        return _pos++ == size ? 't' : ( _pos % 2 == 1 ? 's' : 't' );
+      }
+
+      @Override
+      public int read( byte[] b, int off, int len )
+      {
+        if ( _pos > size ) return -1;
+
+        int n = 0;
+        while ( n < len && _pos <= size ) b[ off + n++ ] = ( byte )read();
+        return n;
+      }
+    };
+
+    assert matcher.feed( huge, StandardCharsets.US_ASCII ).finish();
+
+    // Reading stops as soon as the DFA is stuck
+
+    InputStream endless = new InputStream()
+    {
+      @Override
+      public int read() { return 'x'; }
+    };
+
+    assert !matcher.feed( endless, StandardCharsets.US_ASCII ).finish();
+  }
+}
@@ -0,0 +1,107 @@
+package miniregex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** A DFA that matches UTF-8 bytes as they are, with no decoding:
+ *  it is the DFA of NFA.utf8(), whose inputs are the 256 byte
+ *  values, so a character costs as many steps as it has bytes
+ *  and nothing else.
+ *
+ *  It matches exactly the byte sequences that are the UTF-8
+ *  encoding of a string the pattern matches. Malformed bytes,
+ *  overlong forms and encoded surrogates included, never match.
+ *
+ *  A Utf8DFA is read-only and can be shared between threads.
+ */
+final class Utf8DFA
+{
+  private final DFA   dfa;
+  private final int[] classes = new int[256];
+
+  private Utf8DFA( DFA dfa )
+  {
+    this.dfa = dfa.freeze();
+    for ( int b = 0; b < 256; b++ ) classes[b] = dfa._class( ( char )b );
+  }
+
+  public static Utf8DFA of( NFA nfa ) { return new Utf8DFA( nfa.utf8().dfa() ); }
+
+  /** The DFA over bytes, byte b being the character b.
+   */
+  public DFA dfa() { return dfa; }
+
+  public int walk( int s, byte[] in, int off, int len )
+  {
+    for ( int i = off, end = off + len; i < end && s != DFA.DEAD; i++ )
+      s = dfa._next( s, classes[ in[i] & 0xff ] );
+
+    return s;
+  }
+
+  /** Walks in[from..to) at absolute positions, the buffer's
+   *  position is left alone. Heap, direct and mapped buffers are
+   *  all read in place.
+   */
+  public int walk( int s, ByteBuffer in, int from, int to )
+  {
+    for ( int i = from; i < to && s != DFA.DEAD; i++ )
+      s = dfa._next( s, classes[ in.get( i ) & 0xff ] );
+
+    return s;
+  }
+
+  public boolean simulate( byte[] in ) { return simulate( in, 0, in.length ); }
+
+  public boolean simulate( byte[] in, int off, int len ) { return _accepts( walk( dfa.start(), in, off, len ) ); }
+
+  /** Matches the bytes between the buffer's position and its
+   *  limit, without moving its position.
+   */
+  public boolean simulate( ByteBuffer in ) { return _accepts( walk( dfa.start(), in, in.position(), in.limit() ) ); }
+
+  private boolean _accepts( int s ) { return s != DFA.DEAD && dfa.isFinal( s ); }
+
+  public static void main( String args[] )
+  {
+    String smile = "\ud83d\ude00";
+
+    String[] patterns = { "(s|t)*stt", "caf\u00e9+", "(\u4e2d|\u6587|a)*z", "(" + smile + "|\u00e9)*x", "", "(a|b)*a(a|b)(a|b)" };
+    String[] inputs   = { "", "stt", "sststt", "caf\u00e9\u00e9", "cafe", "\u4e2d\u6587az", "\u4e2dz\u6587z", smile + "\u00e9" + smile + "x",
+                          "aab", "bbab", "caf\u00e9", "x" };
+
+    for ( String p : patterns )
+    {
+      Regex   regex = Regex.compile( p );
+      Utf8DFA utf8  = Utf8DFA.of( Regex.parse( p ) );
+
+      assert utf8.dfa().isFrozen();
+
+      for ( String in : inputs )
+      {
+        byte[] bytes = in.getBytes( StandardCharsets.UTF_8 );
+        assert utf8.simulate( bytes ) == regex.matches( in ) : p + " ~ " + in;
+
+        ByteBuffer heap   = ByteBuffer.wrap( bytes );
+        ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length + 2 ).put( ( byte )'#' ).put( bytes ).put( ( byte )'#' );
+        direct.position( 1 ).limit( 1 + bytes.length );
+
+        assert utf8.simulate( heap ) == regex.matches( in ) : p + " ~ " + in;
+        assert utf8.simulate( direct ) == regex.matches( in ) && direct.position() == 1 : p + " ~ " + in;
+      }
+    }
+
+    // Only well-formed UTF-8 matches: not a character cut short,
+    // not an overlong 'e', not an encoded surrogate
+
+    Utf8DFA any = Utf8DFA.of( Regex.parse( "(e|\u00e9|" + smile + ")*" ) );
+
+    assert any.simulate( ( "e\u00e9" + smile ).getBytes( StandardCharsets.UTF_8 ) );
+    assert !any.simulate( new byte[]{ ( byte )0xc3 } );
+    assert !any.simulate( new byte[]{ ( byte )0xc1, ( byte )0xa5 } );
+    assert !any.simulate( new byte[]{ ( byte )0xed, ( byte )0xa0, ( byte )0xbd } );
+    assert !any.simulate( new byte[]{ ( byte )0xf0, ( byte )0x9f, ( byte )0x98 } );
+
+    System.out.println( String.format( "(e|U+00E9|U+1F600)*: %d states, %d byte classes", any.dfa().count(), any.dfa().nclasses() ) );
+  }
+}